@@ -0,0 +1,163 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+
+/**
+ *  Synthetic data for the benchmarks. Everything is generated from a
+ *  fixed seed, so every run measures the same data.
+ *
+ *  Words are "w0", "w1", ..., drawn from a Zipf distribution, so that a
+ *  few words are very common and most are rare, as in real text.
+ */
+class BenchmarkData {
+
+    static final long SEED = 1;
+
+    /** Returns a postings list of <code>size</code> sorted random docIDs below <code>numDocs</code>, with 1-4 positions each. */
+    static PostingsList postingsList( Random random, int size, int numDocs ) {
+        int[] docIDs = sortedSample( random, size, numDocs );
+        PostingsList list = new PostingsList();
+        for ( int docID : docIDs ) {
+            int tf = 1 + random.nextInt( 4 );
+            int offset = 0;
+            for ( int j=0; j<tf; j++ ) {
+                offset += 1 + random.nextInt( 50 );
+                list.add( docID, offset );
+            }
+        }
+        return list;
+    }
+
+
+    /** Returns <code>size</code> distinct random numbers below <code>bound</code>, in increasing order. */
+    static int[] sortedSample( Random random, int size, int bound ) {
+        BitSet chosen = new BitSet( bound );
+        size = Math.min( size, bound );
+        while ( chosen.cardinality() < size ) {
+            chosen.set( random.nextInt( bound ));
+        }
+        return chosen.stream().toArray();
+    }
+
+
+    /** Returns <code>size</code> increasing offsets with random gaps of 1 to <code>maxGap</code>. */
+    static ArrayList<Integer> offsets( Random random, int size, int maxGap ) {
+        ArrayList<Integer> offsets = new ArrayList<Integer>( size );
+        int offset = 0;
+        for ( int i=0; i<size; i++ ) {
+            offset += 1 + random.nextInt( maxGap );
+            offsets.add( offset );
+        }
+        return offsets;
+    }
+
+
+    /** Returns a random word, drawn from the cumulative distribution <code>cumulative</code> (see zipf). */
+    static String word( Random random, double[] cumulative ) {
+        int i = Arrays.binarySearch( cumulative, random.nextDouble() );
+        if ( i < 0 ) {
+            i = -i - 1;
+        }
+        return "w" + Math.min( i, cumulative.length - 1 );
+    }
+
+
+    /** Returns the cumulative Zipf distribution (exponent 1) over <code>vocabulary</code> words. */
+    static double[] zipf( int vocabulary ) {
+        double[] cumulative = new double[vocabulary];
+        double sum = 0;
+        for ( int i=0; i<vocabulary; i++ ) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        for ( int i=0; i<vocabulary; i++ ) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+
+    /** Returns <code>words</code> words of text, with some punctuation, numbers and capitals. */
+    static String text( Random random, int words, int vocabulary ) {
+        double[] cumulative = zipf( vocabulary );
+        StringBuilder sb = new StringBuilder();
+        for ( int i=0; i<words; i++ ) {
+            String w = word( random, cumulative );
+            switch ( random.nextInt( 20 )) {
+            case 0:  sb.append( Character.toUpperCase( w.charAt( 0 ))).append( w, 1, w.length() ); break;
+            case 1:  sb.append( w ).append( ',' ); break;
+            case 2:  sb.append( w ).append( '.' ); break;
+            case 3:  sb.append( random.nextInt( 10000 )); break;
+            default: sb.append( w );
+            }
+            sb.append( i % 12 == 11 ? '\n' : ' ' );
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     *  Writes <code>docs</code> documents of about <code>words</code>
+     *  words each into the directory <code>dir</code>, which is created
+     *  if needed. Documents that are already there are kept.
+     */
+    static File corpus( File dir, int docs, int words, int vocabulary ) throws IOException {
+        dir.mkdirs();
+        Random random = new Random( SEED );
+        for ( int i=0; i<docs; i++ ) {
+            File f = new File( dir, "doc" + i + ".txt" );
+            String text = text( random, words / 2 + random.nextInt( words ), vocabulary );
+            if ( !f.exists() ) {
+                try ( Writer out = new OutputStreamWriter( new FileOutputStream( f ), StandardCharsets.UTF_8 )) {
+                    out.write( text );
+                }
+            }
+        }
+        return dir;
+    }
+
+
+    /**
+     *  Writes a links file and a titles file (see LinkGraph.read) of
+     *  <code>pages</code> pages with about <code>links</code> links each
+     *  into the directory <code>dir</code>, and reads the graph. Half of
+     *  the links go to pages picked in proportion to the links they
+     *  already have, so a few pages get most of them, as on the web.
+     */
+    static LinkGraph linkGraph( File dir, int pages, int links ) throws IOException {
+        dir.mkdirs();
+        Random random = new Random( SEED );
+        File linksFile = new File( dir, "links.txt" );
+        File titlesFile = new File( dir, "titles.txt" );
+        int[] targets = new int[pages * links];
+        int m = 0;
+        try ( Writer out = new OutputStreamWriter( new FileOutputStream( linksFile ), StandardCharsets.UTF_8 )) {
+            for ( int page=0; page<pages; page++ ) {
+                out.write( page + ";" );
+                int degree = 1 + random.nextInt( 2 * links );
+                for ( int j=0; j<degree; j++ ) {
+                    int target = m > 0 && random.nextBoolean() ? targets[random.nextInt( m )] : random.nextInt( pages );
+                    if ( m < targets.length ) {
+                        targets[m++] = target;
+                    }
+                    out.write( target + "," );
+                }
+                out.write( '\n' );
+            }
+        }
+        try ( Writer out = new OutputStreamWriter( new FileOutputStream( titlesFile ), StandardCharsets.UTF_8 )) {
+            for ( int page=0; page<pages; page++ ) {
+                out.write( page + ";page" + page + ".f\n" );
+            }
+        }
+        return LinkGraph.read( linksFile.getPath(), titlesFile.getPath(), null );
+    }
+}
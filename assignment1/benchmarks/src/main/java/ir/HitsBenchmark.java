@@ -0,0 +1,62 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ *  HITS ranking of the query-specific graph of a root set: collecting
+ *  the base set and its links from the shared link graph, and iterating
+ *  until the scores converge.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class HitsBenchmark {
+
+    /** Number of pages of the link graph. */
+    @Param( { "100000" } )
+    int pages;
+
+    /** Number of documents matching the query. */
+    @Param( { "100", "2000" } )
+    int rootSize;
+
+    LinkGraph graph;
+
+    /** Root sets of different queries. */
+    int[][] roots;
+
+    int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        graph = BenchmarkData.linkGraph( new File( "target/links" ), pages, 8 );
+        Random random = new Random( BenchmarkData.SEED );
+        roots = new int[8][];
+        for ( int i=0; i<roots.length; i++ ) {
+            roots[i] = BenchmarkData.sortedSample( random, rootSize, pages );
+        }
+    }
+
+    @Benchmark
+    public double[] rank() {
+        next = (next + 1) & (roots.length - 1);
+        HITSRanker ranker = new HITSRanker( graph, null );
+        ranker.get_baseset( roots[next] );
+        ranker.iterate();
+        return ranker.hubs;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ *  Merging of postings lists and of position lists, on synthetic lists.
+ *
+ *  The lists of a merge are of different lengths: <code>size</code>
+ *  postings against <code>size/ratio</code> postings, spread over ten
+ *  times as many documents, which is how the lists of a common and a
+ *  rarer term look.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class MergeBenchmark {
+
+    /** Postings in the longer list. */
+    @Param( { "1000", "100000" } )
+    int size;
+
+    /** The longer list is <code>ratio</code> times longer than the shorter. */
+    @Param( { "1", "100" } )
+    int ratio;
+
+    Searcher searcher;
+    PostingsList longList;
+    PostingsList shortList;
+    ArrayList<Integer> offsets1;
+    ArrayList<Integer> offsets2;
+
+    @Setup
+    public void setup() {
+        Random random = new Random( BenchmarkData.SEED );
+        int numDocs = 10 * size;
+        longList = BenchmarkData.postingsList( random, size, numDocs );
+        shortList = BenchmarkData.postingsList( random, Math.max( 1, size / ratio ), numDocs );
+        // Position lists are short, as in a single document
+        offsets1 = BenchmarkData.offsets( random, 100, 20 );
+        offsets2 = BenchmarkData.offsets( random, Math.max( 1, 100 / ratio ), 20 * ratio );
+        searcher = new Searcher( new HashedIndex(), new KGramIndex( 2 ));
+    }
+
+    @Benchmark
+    public PostingsList intersection() {
+        return searcher.interesection( shortList, longList );
+    }
+
+    @Benchmark
+    public PostingsList phraseIntersection() {
+        return searcher.interesection_phrasequery( shortList, longList );
+    }
+
+    @Benchmark
+    public PostingsList phraseEvaluator() {
+        ArrayList<PostingsList[]> terms = new ArrayList<PostingsList[]>();
+        terms.add( new PostingsList[] { shortList } );
+        terms.add( new PostingsList[] { longList } );
+        return new PhraseEvaluator( terms, 0 ).evaluate( Integer.MAX_VALUE, true );
+    }
+
+    @Benchmark
+    public PostingsList union() {
+        return searcher.union( shortList, longList );
+    }
+
+    @Benchmark
+    public ArrayList<Integer> mergeOffsets() {
+        return searcher.merge_offsets( offsets1, offsets2 );
+    }
+
+    @Benchmark
+    public ArrayList<Integer> findMatchingOffset() {
+        return searcher.find_matchingoffset( offsets1, offsets2 );
+    }
+}
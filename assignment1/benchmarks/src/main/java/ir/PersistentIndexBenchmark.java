@@ -0,0 +1,90 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ *  Looking up postings lists in a PersistentHashedIndex, read either
+ *  with random access files or from the memory-mapped files (as with
+ *  -ni).
+ *
+ *  The index is built once per fork, in target/index, from the documents
+ *  in <code>corpus</code>: a sample of the real documents with, for
+ *  example, -p corpus=../davisWiki, or else a synthetic corpus that is
+ *  written to target/corpus the first time. The index of the engine in
+ *  ./index is never touched.
+ *
+ *  The terms that are looked up are drawn from the whole vocabulary,
+ *  weighted by document frequency, as the terms of queries are.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class PersistentIndexBenchmark {
+
+    /** Directory of documents to index, or empty for a synthetic corpus. */
+    @Param( { "" } )
+    String corpus;
+
+    /** Read the index from memory-mapped files instead of random access files. */
+    @Param( { "false", "true" } )
+    boolean mapped;
+
+    PersistentHashedIndex index;
+
+    /** The terms to look up. */
+    String[] terms;
+
+    @State( Scope.Thread )
+    public static class Cursor {
+        int next = 0;
+    }
+
+    @Setup( Level.Trial )
+    public void setup() throws IOException {
+        File dir = corpus.isEmpty()
+            ? BenchmarkData.corpus( new File( "target/corpus" ), 2000, 200, 20000 )
+            : new File( corpus );
+        File indexDir = new File( "target/index" );
+        indexDir.mkdirs();
+        for ( File f : indexDir.listFiles( File::isFile )) {
+            f.delete();
+        }
+
+        PersistentHashedIndex builder = new PersistentHashedIndex( indexDir.getPath(), false );
+        KGramIndex kgIndex = new KGramIndex( 2 );
+        new Indexer( builder, kgIndex, null ).processFiles( dir, true );
+        builder.cleanup();
+
+        index = new PersistentHashedIndex( indexDir.getPath(), mapped );
+        ArrayList<String> vocabulary = new ArrayList<String>( kgIndex.id2term.values() );
+        Collections.sort( vocabulary );
+        ArrayList<String> weighted = new ArrayList<String>();
+        for ( String term : vocabulary ) {
+            int df = Math.min( 100, index.getPostings( term ).size() );
+            for ( int i=0; i<df; i++ ) {
+                weighted.add( term );
+            }
+        }
+        Collections.shuffle( weighted, new Random( BenchmarkData.SEED ));
+        terms = weighted.subList( 0, Math.min( 1 << 16, weighted.size() )).toArray( new String[0] );
+    }
+
+    @Benchmark
+    public PostingsList getPostings( Cursor cursor ) {
+        cursor.next = (cursor.next + 1) % terms.length;
+        return index.getPostings( terms[cursor.next] );
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ *  The two steps of spelling correction: finding the candidate words
+ *  that share k-grams with a query word, and the edit distance between
+ *  a query word and a candidate.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class SpellingBenchmark {
+
+    /** Number of words in the k-gram index. */
+    @Param( { "20000" } )
+    int vocabulary;
+
+    KGramIndex kgIndex;
+    SpellChecker speller;
+
+    /** The query words, with ^ and $ added as for get_k_grams. */
+    String[] marked;
+
+    /** Pairs of words of different lengths for the edit distance. */
+    String[][] pairs;
+
+    int next = 0;
+
+    @Setup
+    public void setup() {
+        Random random = new Random( BenchmarkData.SEED );
+        kgIndex = new KGramIndex( 2 );
+        ArrayList<String> words = new ArrayList<String>();
+        for ( int i=0; i<vocabulary; i++ ) {
+            String word = randomWord( random, 3 + random.nextInt( 10 ));
+            kgIndex.insert( word );
+            words.add( word );
+        }
+        marked = new String[64];
+        pairs = new String[64][];
+        for ( int i=0; i<marked.length; i++ ) {
+            String word = words.get( random.nextInt( words.size() ));
+            marked[i] = "^" + word + "$";
+            pairs[i] = new String[] { word, words.get( random.nextInt( words.size() )) };
+        }
+        speller = new SpellChecker( new HashedIndex(), kgIndex );
+    }
+
+    /** Returns a random word of lowercase letters, mostly vowels and common consonants. */
+    static String randomWord( Random random, int length ) {
+        String letters = "aaeeiioousttnnrrlldmkpbgvhfj";
+        StringBuilder sb = new StringBuilder();
+        for ( int i=0; i<length; i++ ) {
+            sb.append( letters.charAt( random.nextInt( letters.length() )));
+        }
+        return sb.toString();
+    }
+
+    @Benchmark
+    public List<KGramPostingsEntry> kGrams() {
+        next = (next + 1) & (marked.length - 1);
+        return kgIndex.get_k_grams( marked[next] );
+    }
+
+    @Benchmark
+    public int editDistance() {
+        next = (next + 1) & (pairs.length - 1);
+        return speller.editDistance( pairs[next][0], pairs[next][1] );
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ *  Tokenization of a text, with and without the patterns of
+ *  non-standard words.
+ *
+ *  The text is synthetic, unless <code>corpus</code> names a directory,
+ *  for example -p corpus=../davisWiki: then the first 100 files of that
+ *  directory are tokenized. The patterns are read from
+ *  <code>patterns</code> (patterns.txt in the working directory by
+ *  default); the benchmark without patterns runs anyway.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class TokenizerBenchmark {
+
+    /** Directory of sample documents, or empty for synthetic text. */
+    @Param( { "" } )
+    String corpus;
+
+    /** The patterns file of the engine. */
+    @Param( { "patterns.txt" } )
+    String patterns;
+
+    String text;
+
+    /** The patterns file, or null if there is none. */
+    String patterns_file;
+
+    @Setup
+    public void setup() throws IOException {
+        patterns_file = new File( patterns ).exists() ? patterns : null;
+        if ( patterns_file == null ) {
+            System.err.println( "No patterns file " + patterns + ", withPatterns runs without patterns" );
+        }
+        if ( corpus.isEmpty() ) {
+            text = BenchmarkData.text( new Random( BenchmarkData.SEED ), 100000, 20000 );
+        } else {
+            File[] files = new File( corpus ).listFiles( File::isFile );
+            if ( files == null ) {
+                throw new FileNotFoundException( corpus );
+            }
+            Arrays.sort( files );
+            StringBuilder sb = new StringBuilder();
+            for ( int i=0; i<Math.min( 100, files.length ); i++ ) {
+                sb.append( new String( Files.readAllBytes( files[i].toPath() ), StandardCharsets.UTF_8 )).append( '\n' );
+            }
+            text = sb.toString();
+        }
+    }
+
+    int tokenize( String patterns_file, Blackhole bh ) throws IOException {
+        Tokenizer tok = new Tokenizer( new StringReader( text ), true, false, true, patterns_file );
+        int n = 0;
+        while ( tok.hasMoreTokens() ) {
+            bh.consume( tok.nextToken() );
+            n++;
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int withoutPatterns( Blackhole bh ) throws IOException {
+        return tokenize( null, bh );
+    }
+
+    @Benchmark
+    public int withPatterns( Blackhole bh ) throws IOException {
+        return tokenize( patterns_file, bh );
+    }
+}
@@ -1,2 +1,2 @@
 if not exist classes mkdir classes
-javac -cp . -d classes ir/Engine.java ir/HashedIndex.java ir/HITSRanker.java ir/Index.java ir/Indexer.java ir/KGramIndex.java ir/KGramPostingsEntry.java ir/PersistentHashedIndex.java ir/PostingsEntry.java ir/PostingsList.java ir/Query.java ir/QueryType.java ir/RankingType.java ir/Searcher.java ir/SearchGUI.java ir/SpellChecker.java ir/SpellingOptionsDialog.java ir/Tokenizer.java ir/TokenTest.java 
+javac -cp . -d classes ir/Engine.java ir/HashedIndex.java ir/HITSRanker.java ir/Index.java ir/IntersectionBenchmark.java ir/Indexer.java ir/KGramIndex.java ir/KGramPostingsEntry.java ir/DictionaryBuilder.java ir/MappedFile.java ir/PersistentHashedIndex.java ir/PostingsBenchmark.java ir/PostingsCodec.java ir/AccumulatorScorer.java ir/CachedIndex.java ir/CodecBenchmark.java ir/PostingsEntry.java ir/PostingsList.java ir/MaxScoreScorer.java ir/LatencyHistogram.java ir/PhraseEvaluator.java ir/DocColumn.java ir/EuclideanLengths.java ir/DocumentTable.java ir/PhaseTimer.java ir/DocumentPriors.java ir/LinkGraph.java ir/Query.java ir/QueryRunner.java ir/QueryServer.java ir/RankedBenchmark.java ir/QueryType.java ir/RankingType.java ir/Searcher.java ir/SequentialWriter.java ir/SearchGUI.java ir/SpellChecker.java ir/SpellingOptionsDialog.java ir/TermStats.java ir/Tokenizer.java ir/TopKHeap.java ir/TokenTest.java 
@@ -0,0 +1,123 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.util.Arrays;
+
+
+/**
+ *  Scores a ranked query term at a time.
+ *
+ *  The score of every document is accumulated in an array indexed by
+ *  docID, and a bitset records which documents have been touched. Once
+ *  all terms have been added, the best documents are taken out of the
+ *  touched ones with a TopKHeap, and only the touched accumulators are
+ *  cleared again. The arrays are kept from one query to the next, so a
+ *  query allocates little more than its result, and the postings lists
+ *  of the index are only read, never written.
+ *
+ *  Scores are computed and summed in the same order as the union of
+ *  scored lists in Searcher did, so the results are the same.
+ */
+public class AccumulatorScorer {
+
+    /** The index searched. */
+    final Index index;
+
+    /** The pagerank of every document, for PAGERANK and COMBINATION ranking. */
+    final DocColumn pagerank;
+
+    /** Euclidean lengths of the documents, for EUCLIDEAN normalization. */
+    final DocColumn euclidian_length;
+
+    /** The score accumulated so far for each docID. */
+    private double[] accumulators = new double[0];
+
+    /** Bit d is set if document d has been touched by the current query. */
+    private long[] touched = new long[0];
+
+    /** Number of documents touched by the current query. */
+    private int touchedCount = 0;
+
+    /** The heap of the last top-k selection, reused if k is the same. */
+    private TopKHeap heap;
+
+
+    public AccumulatorScorer( Index index, DocColumn pagerank, DocColumn euclidian_length ) {
+        this.index = index;
+        this.pagerank = pagerank;
+        this.euclidian_length = euclidian_length;
+    }
+
+
+    /**
+     *  Adds the scores of the postings of one query term to the
+     *  accumulators, as Searcher.search_engine_ranked_query scores them.
+     */
+    public void add( PostingsList list, double idf, double weight, RankingType rankingType, NormalizationType normtype ) {
+        if ( list.size() > 0 ) {
+            ensureCapacity( list.docID( list.size() - 1 ) + 1 );
+        }
+        for ( int j=0; j<list.size(); j++ ) {
+            int docID = list.docID( j );
+            double score = 0;
+            if ( rankingType == RankingType.TF_IDF ) {
+                score = list.tf_idf( j, idf, MaxScoreScorer.docLength( index, normtype, euclidian_length, docID ), weight );
+            } else if ( rankingType == RankingType.PAGERANK ) {
+                score = pagerank.get( docID );
+            } else if ( rankingType == RankingType.COMBINATION ) {
+                double tfIdf = list.tf_idf( j, idf, MaxScoreScorer.docLength( index, normtype, euclidian_length, docID ), weight );
+                double rank = pagerank.get( docID );
+                double sum = tfIdf + rank;
+                score = 0.7 * tfIdf/sum + 0.3 * rank/sum;
+            }
+            long bit = 1L << docID;
+            if ( (touched[docID >>> 6] & bit) == 0 ) {
+                touched[docID >>> 6] |= bit;
+                touchedCount++;
+                accumulators[docID] = score;
+            } else {
+                accumulators[docID] += score;
+            }
+        }
+    }
+
+
+    /**
+     *  Returns the k best documents touched by the added terms, best
+     *  first, as a postings list with scores, and clears the accumulators
+     *  for the next query.
+     */
+    public PostingsList topK( int k ) {
+        int capacity = Math.min( k, touchedCount );
+        if ( heap == null || heap.capacity() != capacity ) {
+            heap = new TopKHeap( capacity );
+        }
+        heap.clear();
+        for ( int w=0; w<touched.length && touchedCount > 0; w++ ) {
+            long bits = touched[w];
+            while ( bits != 0 ) {
+                int docID = (w << 6) + Long.numberOfTrailingZeros( bits );
+                heap.offer( docID, accumulators[docID] );
+                accumulators[docID] = 0;
+                bits &= bits - 1;
+                touchedCount--;
+            }
+            touched[w] = 0;
+        }
+        return heap.toPostingsList();
+    }
+
+
+    /** Makes room for the docIDs below <code>n</code>. */
+    private void ensureCapacity( int n ) {
+        if ( n > accumulators.length ) {
+            int size = Math.max( n, Math.max( index.getDocuments().limit(), 2*accumulators.length ));
+            accumulators = Arrays.copyOf( accumulators, size );
+            touched = Arrays.copyOf( touched, (size + 63) >>> 6 );
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.util.*;
+
+
+/**
+ *  Keeps the most recently used postings lists of another index in
+ *  memory, so that frequent terms are not read from disk and decoded
+ *  on every query.
+ *
+ *  The cache is bounded by the estimated heap size of the lists it
+ *  holds (PostingsList.heapSize()), and the least recently used lists
+ *  are evicted first. Inserting a token drops its list from the cache.
+ *  The cache can be shared by several searching threads. The lock is
+ *  only held while the map is used: a list missing from the cache is
+ *  read and decoded without it, so a slow lookup does not hold up the
+ *  others.
+ */
+public class CachedIndex implements Index {
+
+    /** Estimated heap size of a cache entry, besides the token and the list. */
+    static final int ENTRY_BYTES = 64;
+
+    /** The index whose postings are cached. */
+    final Index index;
+
+    /** Largest total size of the cached lists, in bytes. */
+    final long capacity;
+
+    /** The cached lists, least recently used first. */
+    final LinkedHashMap<String,Entry> cache = new LinkedHashMap<String,Entry>( 16, 0.75f, true );
+
+    /** Total estimated size of the cached lists, in bytes. */
+    long size = 0;
+
+    long hits = 0;
+    long misses = 0;
+    long evictions = 0;
+
+
+    /**
+     *  A cached list and the size it was charged when it was cached. The
+     *  size of a list can change later (it grows when scores are set),
+     *  so exactly the charged size is given back when it is dropped.
+     */
+    static class Entry {
+        final PostingsList list;
+        final long bytes;
+
+        /** The statistics of the term, once they have been asked for. */
+        volatile TermStats stats;
+
+        Entry( PostingsList list, long bytes ) {
+            this.list = list;
+            this.bytes = bytes;
+        }
+    }
+
+
+    /** Caches up to <code>capacity</code> bytes of postings of <code>index</code>. */
+    public CachedIndex( Index index, long capacity ) {
+        this.index = index;
+        this.capacity = capacity;
+    }
+
+
+    /** Returns the number of bytes a cache entry for <code>token</code> takes. */
+    static long entrySize( String token, PostingsList list ) {
+        return ENTRY_BYTES + 2L*token.length() + list.heapSize();
+    }
+
+
+    /**
+     *  Returns the postings for a given term, from the cache if possible.
+     */
+    public PostingsList getPostings( String token ) {
+        synchronized ( this ) {
+            Entry entry = cache.get( token );
+            if ( entry != null ) {
+                hits++;
+                return entry.list;
+            }
+            misses++;
+        }
+        PostingsList list = index.getPostings( token );
+        if ( list == null ) {
+            return null;
+        }
+        long bytes = entrySize( token, list );
+        if ( bytes > capacity ) {
+            return list;
+        }
+        synchronized ( this ) {
+            Entry cached = cache.get( token );
+            if ( cached != null ) {
+                // Another thread read the same list meanwhile.
+                return cached.list;
+            }
+            cache.put( token, new Entry( list, bytes ));
+            size += bytes;
+            Iterator<Entry> it = cache.values().iterator();
+            while ( size > capacity ) {
+                size -= it.next().bytes;
+                it.remove();
+                evictions++;
+            }
+        }
+        return list;
+    }
+
+
+    /**
+     *  Returns the statistics of a term from the underlying index, which
+     *  can usually read them without the postings. They are kept with
+     *  the cached list of the term, if there is one. Does not count as a
+     *  lookup.
+     */
+    public TermStats getTermStats( String token ) {
+        Entry entry;
+        synchronized ( this ) {
+            entry = cache.get( token );
+        }
+        if ( entry == null ) {
+            return index.getTermStats( token );
+        }
+        if ( entry.stats == null ) {
+            entry.stats = index.getTermStats( token );
+        }
+        return entry.stats;
+    }
+
+
+    public DocumentTable getDocuments() {
+        return index.getDocuments();
+    }
+
+
+    public DocColumn euclideanLengths() {
+        return index.euclideanLengths();
+    }
+
+
+    public DocColumn priors() {
+        return index.priors();
+    }
+
+
+    public void setPriors( DocColumn priors ) {
+        index.setPriors( priors );
+    }
+
+
+    /** Drops the cached list of <code>token</code>, if any. */
+    synchronized void invalidate( String token ) {
+        Entry entry = cache.remove( token );
+        if ( entry != null ) {
+            size -= entry.bytes;
+        }
+    }
+
+
+    public void insert( String token, int docID, int offset ) {
+        invalidate( token );
+        index.insert( token, docID, offset );
+    }
+
+
+    public void insertPostings( String token, PostingsList postings ) {
+        invalidate( token );
+        index.insertPostings( token, postings );
+    }
+
+
+    public void cleanup() {
+        synchronized ( this ) {
+            cache.clear();
+            size = 0;
+        }
+        index.cleanup();
+    }
+
+
+    /** Number of lookups answered from the cache. */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /** Number of lookups passed on to the underlying index. */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /** Number of lists dropped to make room for others. */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+
+    /** Prints the counters and the size of the cache. */
+    public synchronized void printStatistics() {
+        long lookups = Math.max( 1, hits + misses );
+        System.err.println( String.format( "Postings cache: %d hits, %d misses (hit rate %.1f%%), %d evictions, %d lists, %.1f of %.1f MB used",
+                                           hits, misses, 100.0 * hits / lookups, evictions, cache.size(),
+                                           size / 1048576.0, capacity / 1048576.0 ));
+    }
+}
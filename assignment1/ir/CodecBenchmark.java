@@ -0,0 +1,104 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+
+/**
+ *  Compares the old text format and the binary format of PostingsCodec:
+ *  total size of the encoded postings and decoding speed.
+ *
+ *  Usage: java -cp classes ir.CodecBenchmark -d dir [-p patterns_file] [-r rounds]
+ */
+public class CodecBenchmark {
+
+    /** Decodes all entries and returns the time it took in nanoseconds. */
+    static long decodeAll( ArrayList<byte[]> entries, boolean binary ) {
+        long start = System.nanoTime();
+        long postings = 0;
+        for ( byte[] entry : entries ) {
+            PostingsList list = binary ? PostingsCodec.decode( ByteBuffer.wrap( entry ))
+                                       : PostingsCodec.decodeText( new String( entry ));
+            postings += list.size();
+        }
+        long elapsed = System.nanoTime() - start;
+        if ( postings < 0 ) {
+            System.err.println( postings );
+        }
+        return elapsed;
+    }
+
+
+    public static void main( String[] args ) {
+        String dir = null;
+        String patterns_file = null;
+        int rounds = 5;
+        for ( int i=0; i<args.length; i++ ) {
+            if ( "-d".equals( args[i] ) && i+1 < args.length ) {
+                dir = args[++i];
+            } else if ( "-p".equals( args[i] ) && i+1 < args.length ) {
+                patterns_file = args[++i];
+            } else if ( "-r".equals( args[i] ) && i+1 < args.length ) {
+                rounds = Integer.parseInt( args[++i] );
+            } else {
+                System.err.println( "Unknown option: " + args[i] );
+            }
+        }
+        if ( dir == null ) {
+            System.err.println( "Usage: CodecBenchmark -d dir [-p patterns_file] [-r rounds]" );
+            return;
+        }
+
+        HashedIndex index = new HashedIndex();
+        HashSet<String> terms = new HashSet<String>();
+        Indexer indexer = new Indexer( new Index() {
+                public void insert( String token, int docID, int offset ) {
+                    index.insert( token, docID, offset );
+                    terms.add( token );
+                }
+                public PostingsList getPostings( String token ) {
+                    return index.getPostings( token );
+                }
+                public void cleanup() {
+                    index.cleanup();
+                }
+                public DocumentTable getDocuments() {
+                    return index.getDocuments();
+                }
+            }, null, patterns_file );
+        indexer.processFiles( new File( dir ), true );
+        index.cleanup();
+
+        ArrayList<byte[]> text = new ArrayList<byte[]>();
+        ArrayList<byte[]> binary = new ArrayList<byte[]>();
+        long textBytes = 0, binaryBytes = 0, postings = 0;
+        for ( String term : terms ) {
+            PostingsList list = index.getPostings( term );
+            byte[] t = PostingsCodec.encodeText( term, list );
+            byte[] b = PostingsCodec.encode( term, list );
+            text.add( t );
+            binary.add( b );
+            textBytes += t.length;
+            binaryBytes += b.length;
+            postings += list.size();
+        }
+        System.err.println( terms.size() + " unique words, " + postings + " postings" );
+        System.err.println( String.format( "text   %10d bytes", textBytes ));
+        System.err.println( String.format( "binary %10d bytes  (%.1f%% of text)", binaryBytes, 100.0 * binaryBytes / textBytes ));
+
+        long bestText = Long.MAX_VALUE, bestBinary = Long.MAX_VALUE;
+        for ( int r=0; r<rounds; r++ ) {
+            bestText = Math.min( bestText, decodeAll( text, false ));
+            bestBinary = Math.min( bestBinary, decodeAll( binary, true ));
+        }
+        System.err.println( String.format( "decode text   %8.1f ms  %8.1f MB/s of postings data", bestText / 1e6, textBytes / (bestText / 1e9) / 1048576 ));
+        System.err.println( String.format( "decode binary %8.1f ms  %8.1f MB/s of postings data", bestBinary / 1e6, binaryBytes / (bestBinary / 1e9) / 1048576 ));
+        System.err.println( String.format( "binary decoding is %.1f times faster", (double)bestText / bestBinary ));
+    }
+}
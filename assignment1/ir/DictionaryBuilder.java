@@ -0,0 +1,181 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.util.Arrays;
+
+
+/**
+ *  Builds the dictionary of a PersistentHashedIndex in memory.
+ *
+ *  The entries are collected as they are added. When the dictionary is
+ *  written, the hash table is sized from the number of entries: the
+ *  smallest power of two that keeps the load factor at most MAX_LOAD.
+ *  Each entry goes to the slot given by the low bits of the 64-bit hash
+ *  of its token (PersistentHashedIndex.hash64), and collisions are
+ *  resolved by Robin Hood linear probing, wrapping around at the end of
+ *  the table: an entry that is further from its home slot than the one
+ *  in the slot it probes takes that slot, and the other entry moves on.
+ *  This keeps the probe sequences short and of similar lengths, and the
+ *  longest one is stored in the header so that lookups of missing
+ *  tokens can stop after that many probes.
+ *
+ *  The file starts with a header (see PersistentHashedIndex), followed
+ *  by the slots: pointer to the postings (long), length of the postings
+ *  (int, 0 for an empty slot), hash of the token (long), and the
+ *  statistics of the term: df (int), cf (long), max tf (int) and max
+ *  tf divided by the document length (double).
+ */
+public class DictionaryBuilder {
+
+    /** Maximal number of entries per slot. */
+    static final double MAX_LOAD = 0.75;
+
+    /** Number of entries added. */
+    int size = 0;
+
+    /** Hash, pointer and length of the postings of each added entry. */
+    long[] hashes = new long[1024];
+    long[] pointers = new long[1024];
+    int[] lengths = new int[1024];
+
+    /** Statistics of the term of each added entry. */
+    int[] dfs = new int[1024];
+    long[] cfs = new long[1024];
+    int[] maxTfs = new int[1024];
+    double[] maxTfNorms = new double[1024];
+
+    /** Number of documents and tokens of the collection, stored in the header. */
+    long documents = 0;
+    long tokens = 0;
+
+    /** Number of slots of the table, known after write(). */
+    long capacity;
+
+    /** Number of slots between the home slot and the slot of the entry furthest away from it. */
+    int maxDistance;
+
+    /** Sum over all entries of the distance between their home slot and their slot. */
+    long totalDistance;
+
+
+    /**
+     *  Adds the entry for <code>token</code>, whose postings are the
+     *  <code>length</code> bytes at <code>pointer</code> in the data file.
+     */
+    public void add( String token, long pointer, int length, TermStats stats ) {
+        if ( size == hashes.length ) {
+            hashes = Arrays.copyOf( hashes, 2*size );
+            pointers = Arrays.copyOf( pointers, 2*size );
+            lengths = Arrays.copyOf( lengths, 2*size );
+            dfs = Arrays.copyOf( dfs, 2*size );
+            cfs = Arrays.copyOf( cfs, 2*size );
+            maxTfs = Arrays.copyOf( maxTfs, 2*size );
+            maxTfNorms = Arrays.copyOf( maxTfNorms, 2*size );
+        }
+        hashes[size] = PersistentHashedIndex.hash64( token );
+        pointers[size] = pointer;
+        lengths[size] = length;
+        dfs[size] = stats.df;
+        cfs[size] = stats.cf;
+        maxTfs[size] = stats.maxTf;
+        maxTfNorms[size] = stats.maxTfNorm;
+        size++;
+    }
+
+
+    /** Sets the collection statistics stored in the header. */
+    public void setCollectionStats( long documents, long tokens ) {
+        this.documents = documents;
+        this.tokens = tokens;
+    }
+
+
+    /**
+     *  Sizes the table, places all entries and writes the header and
+     *  all slots to <code>fileName</code>.
+     *
+     *  @return The number of bytes written.
+     */
+    public long write( String fileName ) throws IOException {
+        int n = 16;
+        while ( n * MAX_LOAD < size ) {
+            n <<= 1;
+        }
+        capacity = n;
+        int mask = n - 1;
+        // The number of the entry in each slot, -1 for empty slots.
+        int[] slots = new int[n];
+        Arrays.fill( slots, -1 );
+        for ( int i=0; i<size; i++ ) {
+            int entry = i;
+            int slot = (int)hashes[entry] & mask;
+            int distance = 0;
+            while ( slots[slot] != -1 ) {
+                int d = (slot - ((int)hashes[slots[slot]] & mask)) & mask;
+                if ( d < distance ) {
+                    // The entry in this slot is closer to home: it moves on instead.
+                    int other = slots[slot];
+                    slots[slot] = entry;
+                    entry = other;
+                    distance = d;
+                }
+                slot = (slot + 1) & mask;
+                distance++;
+            }
+            slots[slot] = entry;
+        }
+
+        maxDistance = 0;
+        totalDistance = 0;
+        for ( int slot=0; slot<n; slot++ ) {
+            if ( slots[slot] != -1 ) {
+                int d = (slot - ((int)hashes[slots[slot]] & mask)) & mask;
+                maxDistance = Math.max( maxDistance, d );
+                totalDistance += d;
+            }
+        }
+
+        try ( SequentialWriter out = new SequentialWriter( fileName )) {
+            out.writeInt( PersistentHashedIndex.DICTIONARY_MAGIC );
+            out.writeInt( PersistentHashedIndex.DICTIONARY_VERSION );
+            out.writeLong( capacity );
+            out.writeLong( size );
+            out.writeInt( maxDistance );
+            out.writeInt( 0 );
+            out.writeLong( documents );
+            out.writeLong( tokens );
+            byte[] empty = new byte[PersistentHashedIndex.ENTRY_SIZE];
+            for ( int slot=0; slot<n; slot++ ) {
+                int e = slots[slot];
+                if ( e == -1 ) {
+                    out.write( empty );
+                } else {
+                    out.writeLong( pointers[e] );
+                    out.writeInt( lengths[e] );
+                    out.writeLong( hashes[e] );
+                    out.writeInt( dfs[e] );
+                    out.writeLong( cfs[e] );
+                    out.writeInt( maxTfs[e] );
+                    out.writeLong( Double.doubleToLongBits( maxTfNorms[e] ));
+                }
+            }
+            return out.position();
+        }
+    }
+
+
+    /**
+     *  Prints the size of the table and how many probes lookups of the
+     *  tokens in the dictionary need.
+     */
+    public void printStatistics() {
+        System.err.println( String.format( "Dictionary: %d entries in %d slots (load %.2f), probes per lookup: max %d, average %.2f",
+                                           size, capacity, (double)size / capacity, maxDistance + 1,
+                                           1 + (double)totalDistance / Math.max( 1, size )));
+    }
+}
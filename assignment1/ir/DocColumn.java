@@ -0,0 +1,107 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ *  A column of doubles with one value per document, indexed by docID,
+ *  such as the euclidean lengths of the documents.
+ *
+ *  A column is stored in its own binary file: the version and the
+ *  number of values as ints, then the values as doubles. Reading a
+ *  column memory-maps the file, and values are read straight from the
+ *  mapping, so it is loaded at once whatever the number of documents.
+ *  A column never changes, so any number of threads can read it.
+ */
+public class DocColumn {
+
+    /** The version of the file format. */
+    static final int VERSION = 1;
+
+    /** The version and the number of values. */
+    static final int HEADER_SIZE = 8;
+
+    /** The values, in memory or mapped. Only read with absolute gets. */
+    private final DoubleBuffer values;
+
+
+    /** Creates a column of the values in <code>values</code>, which must not change afterwards. */
+    public DocColumn( double[] values ) {
+        this.values = DoubleBuffer.wrap( values );
+    }
+
+
+    private DocColumn( DoubleBuffer values ) {
+        this.values = values;
+    }
+
+
+    /** Memory-maps the column in the file <code>fileName</code>. */
+    public static DocColumn read( String fileName ) throws IOException {
+        try ( RandomAccessFile file = new RandomAccessFile( fileName, "r" );
+              FileChannel channel = file.getChannel() ) {
+            ByteBuffer buf = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+            int version = buf.getInt();
+            int size = buf.getInt();
+            if ( version != VERSION || HEADER_SIZE + 8L * size != channel.size() ) {
+                throw new IOException( fileName + ": not a version " + VERSION + " column of " + size + " values" );
+            }
+            return new DocColumn( buf.slice().asDoubleBuffer() );
+        }
+    }
+
+
+    /** Writes the column to the file <code>fileName</code>. */
+    public void write( String fileName ) throws IOException {
+        int size = size();
+        ByteBuffer buf = ByteBuffer.allocate( HEADER_SIZE + 8 * size );
+        buf.putInt( VERSION ).putInt( size );
+        for ( int i=0; i<size; i++ ) {
+            buf.putDouble( values.get( i ));
+        }
+        buf.flip();
+        try ( FileOutputStream out = new FileOutputStream( fileName );
+              FileChannel channel = out.getChannel() ) {
+            while ( buf.hasRemaining() ) {
+                channel.write( buf );
+            }
+        }
+    }
+
+
+    /** Number of values; documents from size() on have none. */
+    public int size() {
+        return values.limit();
+    }
+
+
+    /** Returns the value of document <code>docID</code>, or 0 if it has none. */
+    public double get( int docID ) {
+        return docID < values.limit() ? values.get( docID ) : 0;
+    }
+
+
+    /**
+     *  Returns the smallest positive value of the first <code>n</code>
+     *  documents, or 0 if some of them have no value at all. Zero values
+     *  are skipped.
+     */
+    public double minPositive( int n ) {
+        double min = n > size() ? 0 : Double.POSITIVE_INFINITY;
+        for ( int i=0; i<Math.min( n, size() ); i++ ) {
+            double value = values.get( i );
+            if ( value > 0 ) {
+                min = Math.min( min, value );
+            }
+        }
+        return min;
+    }
+}
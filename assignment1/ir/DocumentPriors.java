@@ -0,0 +1,72 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+
+/**
+ *  Joins static document scores, such as the pageranks computed by
+ *  pagerank.PageRank, to the docIDs of an index.
+ *
+ *  The scores are read from a text file with one line
+ *  <code>name;score</code> per document, where the name is the file
+ *  name of the document (<code>Davis.f</code>), without its directory.
+ *  The join is done once, when the index is built, and the result is a
+ *  DocColumn that the index stores, so searching reads the score of a
+ *  document from an array. Documents without a score get 0.
+ */
+public class DocumentPriors {
+
+    /** The scores file that is used if none is given. */
+    public static final String DEFAULT_FNAME = "ranking_computed.txt";
+
+
+    /** Returns the file name of a document, without its directory. */
+    static String fileName( String path ) {
+        int slash = Math.max( path.lastIndexOf( '/' ), path.lastIndexOf( File.separatorChar ));
+        return path.substring( slash + 1 );
+    }
+
+
+    /**
+     *  Reads the scores in the file <code>fileName</code> and returns
+     *  the score of every document of <code>documents</code>.
+     */
+    public static DocColumn join( String fileName, DocumentTable documents ) throws IOException {
+        HashMap<String,Double> scores = new HashMap<String,Double>();
+        try ( BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( fileName ), StandardCharsets.UTF_8 ))) {
+            String line;
+            while ( (line = reader.readLine()) != null ) {
+                int semicolon = line.lastIndexOf( ';' );
+                if ( semicolon < 0 ) {
+                    continue;
+                }
+                try {
+                    scores.put( line.substring( 0, semicolon ), Double.parseDouble( line.substring( semicolon + 1 )));
+                } catch ( NumberFormatException e ) {
+                    throw new IOException( fileName + ": bad score in line \"" + line + "\"" );
+                }
+            }
+        }
+        double[] priors = new double[documents.limit()];
+        int joined = 0;
+        for ( int docID=0; docID<priors.length; docID++ ) {
+            if ( documents.contains( docID )) {
+                Double score = scores.get( fileName( documents.name( docID )));
+                if ( score != null ) {
+                    priors[docID] = score;
+                    joined++;
+                }
+            }
+        }
+        System.err.println( String.format( "%s: %d scores, %d of %d documents have one",
+                                           fileName, scores.size(), joined, documents.size() ));
+        return new DocColumn( priors );
+    }
+}
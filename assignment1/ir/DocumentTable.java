@@ -0,0 +1,252 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+
+/**
+ *  The names and lengths (number of words) of the documents of an
+ *  index, by docID.
+ *
+ *  The lengths are kept in an int array, so looking one up is a single
+ *  array read. The names are kept as UTF-8 in one byte array, one after
+ *  the other, and are only turned into Strings when asked for, so a
+ *  name takes little more than its characters.
+ *
+ *  Documents are added in docID order while indexing. A docID may be
+ *  skipped (a file that could not be read): that document has no name
+ *  and length 0. The table must not change once searching has started,
+ *  then any number of threads can read it.
+ *
+ *  The table is stored in a binary file: the version, the docID limit
+ *  and the number of documents as ints, then the length of every docID
+ *  (-1 for skipped ones), the end of every name in the name bytes, and
+ *  the name bytes.
+ */
+public class DocumentTable {
+
+    /** The version of the file format. */
+    static final int VERSION = 1;
+
+    /** The version, the docID limit and the number of documents. */
+    static final int HEADER_SIZE = 12;
+
+    /** Number of documents. */
+    private int count = 0;
+
+    /** Every docID added so far is below limit. */
+    private int limit = 0;
+
+    /** The length of each document. */
+    private int[] lengths = new int[1024];
+
+    /** The name of document d is nameBytes[nameEnd[d-1] .. nameEnd[d]-1]. */
+    private int[] nameEnd = new int[1024];
+
+    /** The names, in UTF-8. */
+    private byte[] nameBytes = new byte[16384];
+
+    /** The docIDs below limit that were skipped, or null if there are none. */
+    private BitSet skipped = null;
+
+
+    /**
+     *  Adds document <code>docID</code>, which must be larger than the
+     *  docIDs added so far.
+     */
+    public void add( int docID, String name, int length ) {
+        if ( docID < limit ) {
+            throw new IllegalArgumentException( "docID " + docID + " added after docID " + (limit - 1) );
+        }
+        if ( docID >= lengths.length ) {
+            int capacity = Math.max( 2 * lengths.length, docID + 1 );
+            lengths = Arrays.copyOf( lengths, capacity );
+            nameEnd = Arrays.copyOf( nameEnd, capacity );
+        }
+        int end = nameEnd( limit - 1 );
+        for ( int d=limit; d<docID; d++ ) {
+            if ( skipped == null ) {
+                skipped = new BitSet();
+            }
+            skipped.set( d );
+            nameEnd[d] = end;
+        }
+        byte[] bytes = name.getBytes( StandardCharsets.UTF_8 );
+        if ( end + bytes.length > nameBytes.length ) {
+            nameBytes = Arrays.copyOf( nameBytes, Math.max( 2 * nameBytes.length, end + bytes.length ));
+        }
+        System.arraycopy( bytes, 0, nameBytes, end, bytes.length );
+        nameEnd[docID] = end + bytes.length;
+        lengths[docID] = length;
+        limit = docID + 1;
+        count++;
+    }
+
+
+    private int nameEnd( int docID ) {
+        return docID < 0 ? 0 : nameEnd[docID];
+    }
+
+
+    /** Number of documents. */
+    public int size() {
+        return count;
+    }
+
+
+    /** All docIDs are below this limit. */
+    public int limit() {
+        return limit;
+    }
+
+
+    /** Returns true if the table has document <code>docID</code>. */
+    public boolean contains( int docID ) {
+        return docID >= 0 && docID < limit && (skipped == null || !skipped.get( docID ));
+    }
+
+
+    /** Returns the length of document <code>docID</code>, or 0 if there is no such document. */
+    public int length( int docID ) {
+        return docID < limit ? lengths[docID] : 0;
+    }
+
+
+    /** Returns the name of document <code>docID</code>, or null if there is no such document. */
+    public String name( int docID ) {
+        if ( !contains( docID )) {
+            return null;
+        }
+        int start = nameEnd( docID - 1 );
+        return new String( nameBytes, start, nameEnd[docID] - start, StandardCharsets.UTF_8 );
+    }
+
+
+    /** Returns the total length of all documents. */
+    public long totalLength() {
+        long total = 0;
+        for ( int d=0; d<limit; d++ ) {
+            total += lengths[d];
+        }
+        return total;
+    }
+
+
+    /** Number of bytes of the file written by write(). */
+    private long fileSize() {
+        return HEADER_SIZE + 8L * limit + nameEnd( limit - 1 );
+    }
+
+
+    /**
+     *  Writes the table to the file <code>fileName</code>, in one buffer
+     *  filled with bulk puts.
+     */
+    public void write( String fileName ) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate( (int)fileSize() );
+        buf.putInt( VERSION ).putInt( limit ).putInt( count );
+        IntBuffer ints = buf.asIntBuffer();
+        for ( int d=0; d<limit; d++ ) {
+            ints.put( contains( d ) ? lengths[d] : -1 );
+        }
+        ints.put( nameEnd, 0, limit );
+        buf.position( buf.position() + 4 * ints.position() );
+        buf.put( nameBytes, 0, nameEnd( limit - 1 ));
+        buf.flip();
+        try ( FileOutputStream out = new FileOutputStream( fileName );
+              FileChannel channel = out.getChannel() ) {
+            while ( buf.hasRemaining() ) {
+                channel.write( buf );
+            }
+        }
+    }
+
+
+    /**
+     *  Reads a table written by write(). The file is memory-mapped and
+     *  copied into the arrays with bulk gets, so a table of millions of
+     *  documents loads in a few milliseconds.
+     */
+    public static DocumentTable read( String fileName ) throws IOException {
+        try ( RandomAccessFile file = new RandomAccessFile( fileName, "r" );
+              FileChannel channel = file.getChannel() ) {
+            ByteBuffer buf = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+            DocumentTable table = new DocumentTable();
+            int version = buf.getInt();
+            table.limit = buf.getInt();
+            table.count = buf.getInt();
+            if ( version != VERSION || table.limit < 0 || HEADER_SIZE + 8L * table.limit > channel.size() ) {
+                throw new IOException( fileName + ": not a version " + VERSION + " document table" );
+            }
+            table.lengths = new int[table.limit];
+            table.nameEnd = new int[table.limit];
+            IntBuffer ints = buf.asIntBuffer();
+            ints.get( table.lengths );
+            ints.get( table.nameEnd );
+            if ( table.fileSize() != channel.size() ) {
+                throw new IOException( fileName + ": the document table has " + channel.size() + " bytes, not " + table.fileSize() );
+            }
+            for ( int d=0; d<table.limit; d++ ) {
+                if ( table.lengths[d] < 0 ) {
+                    if ( table.skipped == null ) {
+                        table.skipped = new BitSet();
+                    }
+                    table.skipped.set( d );
+                    table.lengths[d] = 0;
+                }
+            }
+            table.nameBytes = new byte[table.nameEnd( table.limit - 1 )];
+            buf.position( buf.position() + 4 * ints.position() );
+            buf.get( table.nameBytes );
+            return table;
+        }
+    }
+
+
+    /**
+     *  Reads the text docInfo file of older indexes: one line
+     *  <code>docID;name;length</code> per document, in any order.
+     */
+    public static DocumentTable readText( String fileName ) throws IOException {
+        int n = 0;
+        int[] docIDs = new int[1024];
+        String[] lines = new String[1024];
+        try ( BufferedReader br = new BufferedReader( new InputStreamReader( new FileInputStream( fileName ), StandardCharsets.UTF_8 ))) {
+            String line;
+            while ( (line = br.readLine()) != null ) {
+                if ( n == lines.length ) {
+                    lines = Arrays.copyOf( lines, 2 * n );
+                    docIDs = Arrays.copyOf( docIDs, 2 * n );
+                }
+                docIDs[n] = Integer.parseInt( line.substring( 0, line.indexOf( ';' )));
+                lines[n++] = line;
+            }
+        }
+        Integer[] order = new Integer[n];
+        for ( int i=0; i<n; i++ ) {
+            order[i] = i;
+        }
+        final int[] ids = docIDs;
+        Arrays.sort( order, (a, b) -> Integer.compare( ids[a], ids[b] ));
+        DocumentTable table = new DocumentTable();
+        for ( int i : order ) {
+            String line = lines[i];
+            int last = line.lastIndexOf( ';' );
+            String name = line.substring( line.indexOf( ';' ) + 1, last );
+            if ( docIDs[i] >= table.limit ) {
+                table.add( docIDs[i], name, Integer.parseInt( line.substring( last + 1 )));
+            }
+        }
+        return table;
+    }
+}
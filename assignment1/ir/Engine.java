@@ -7,7 +7,7 @@
 
 package ir;
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.*;
 import java.io.File;
 
@@ -17,10 +17,7 @@ import java.io.File;
 public class Engine {
 
     /** The inverted index. */
-    Index index = new HashedIndex();
-    //Index index = new PersistentHashedIndex();
-    // Index index = new PersistentScalableHashedIndex();
-    // Index index = new PersistentScalableHashedIndexSec();
+    Index index;
 
     /** The indexer creating the search index. */
     Indexer indexer;
@@ -28,36 +25,55 @@ public class Engine {
     /** K-gram index */
     KGramIndex kgIndex = new KGramIndex(2);
 
-    /** The searcher used to search the index. */
-    Searcher searcher;
+    /**
+     *  The searcher used to search the index, or null while the index is
+     *  being built. It is only set once the index is complete, and the
+     *  index does not change afterwards, so searches need no lock.
+     */
+    volatile Searcher searcher;
 
-    /** Spell checker */
-    SpellChecker speller = new SpellChecker(index,kgIndex);
+    /** Spell checker, set before the searcher. */
+    volatile SpellChecker speller;
 
-    /** The engine GUI. */
+    /** The engine GUI, or null when running headless. */
     SearchGUI gui;
 
+    /** Serves queries over HTTP when running headless. */
+    QueryServer server;
+
     /** Directories that should be indexed. */
     ArrayList<String> dirNames = new ArrayList<String>();
 
-    /** Lock to prevent simultaneous access to the index. */
-    Object indexLock = new Object();
-
     /** The patterns matching non-standard words (e-mail addresses, etc.) */
     String patterns_file = null;
 
     /** The file containing the logo. */
     String pic_file = "";
 
-    /** The file containing the pageranks. */
-    String rank_file = "";
+    /**
+     *  The file containing the pageranks, which are joined to the
+     *  documents of the index (see DocumentPriors), or null for
+     *  DocumentPriors.DEFAULT_FNAME.
+     */
+    String rank_file = null;
 
     /** For persistent indexes, we might not need to do any indexing. */
     boolean is_indexing = true;
 
-    HashMap<Integer,Double> ranking_hash = new HashMap<Integer,Double>();
-    HashMap<String,Double> title_hash = new HashMap<String,Double>();
-    HashMap<Integer, Double> euclidian_length = new HashMap<>();
+    /** Number of threads used for indexing. */
+    int threads = 1;
+
+    /** Size of the postings cache in MB, 0 for no cache. */
+    int cacheMB = 0;
+
+    /** Run without a GUI, and serve queries over HTTP instead. */
+    boolean headless = false;
+
+    /** Port of the query server. */
+    int port = 8080;
+
+    /** Number of threads of the query server. */
+    int serverThreads = Runtime.getRuntime().availableProcessors();
 
 
     /* ----------------------------------------------- */
@@ -68,87 +84,120 @@ public class Engine {
      *   Indexes all chosen directories and files
      */
     public Engine( String[] args ) {
-        HashMap<String, Integer> myNewHashMap = new HashMap<>();
-        for(HashMap.Entry<Integer, String> entry : index.docNames.entrySet()){
-            myNewHashMap.put(entry.getValue().split("/davisWiki/")[1], entry.getKey());
+        PhaseTimer startup = new PhaseTimer();
+        decodeArgs( args );
+        if ( is_indexing ) {
+            index = new HashedIndex();
+            //index = new PersistentHashedIndex();
+            // index = new PersistentScalableHashedIndex();
+        } else {
+            // Nothing to index: serve the persistent index read-only,
+            // straight from the memory-mapped dictionary and data files.
+            PersistentHashedIndex persistent = new PersistentHashedIndex( true );
+            System.err.println( "Opened the index in " + persistent.openTimes );
+            index = persistent;
         }
+        if ( cacheMB > 0 ) {
+            final CachedIndex cache = new CachedIndex( index, cacheMB * 1048576L );
+            Runtime.getRuntime().addShutdownHook( new Thread( () -> cache.printStatistics() ));
+            index = cache;
+        }
+        startup.lap( "index" );
 
-        //read the ranking
-        try {
-
-            File myObj = new File("ranking_computed.txt");
-            Scanner myReader = new Scanner(myObj);
-
-            while (myReader.hasNextLine()) {
-                String data = myReader.nextLine();
-                String [] read_data = data.split(";");
-                this.title_hash.put(read_data[0], Double.parseDouble(read_data[1]));
-            }
-            myReader.close();
-        } catch (FileNotFoundException e) {
-            System.out.println("An error occurred.");
-            e.printStackTrace();
+        indexer = new Indexer( index, kgIndex, patterns_file, threads );
+        if ( !headless ) {
+            gui = new SearchGUI( this );
+            gui.init();
+            startup.lap( "gui" );
         }
-        for (HashMap.Entry<String, Double> entry : this.title_hash.entrySet()) {
-            if(myNewHashMap.containsKey(entry.getKey())) {
-                int index = myNewHashMap.get(entry.getKey());
-                this.ranking_hash.put(index, entry.getValue());
+        /* 
+         *   Calls the indexer to index the chosen directory structure.
+         *   Nothing can be searched until the index is complete: then the
+         *   searcher is published, and from then on the index is only read,
+         *   so any number of searches can run at the same time.
+         */
+        long elapsedTime = 0;
+        if (is_indexing) {
+            displayInfoText( "Indexing, please wait..." );
+            long startTime = System.currentTimeMillis();
+            for ( int i=0; i<dirNames.size(); i++ ) {
+                File dokDir = new File( dirNames.get( i ));
+                indexer.processFiles( dokDir, is_indexing );
             }
+            elapsedTime = System.currentTimeMillis() - startTime;
+            System.out.println("BEFORE LAST CLEAN UP");
+            index.cleanup();
+            System.out.println("AFTER LAST CLEAN UP");
+            print_index("ve");
+            print_index("th he");
+            startup.lap( "indexing" );
         }
+        joinPriors();
+        startup.lap( "pageranks" );
+        publish();
+        startup.lap( "searcher" );
+        if (is_indexing) {
+            displayInfoText( String.format( "Indexing done in %.1f seconds.", elapsedTime/1000.0 ));
+        } else {
+            displayInfoText( "Index is loaded from disk" );
+        }
+        System.err.println( "Started in " + startup );
+    }
 
-        //EUCLIDIAN DISTANCE
-        try {
-
-            File myObj = new File("euclidian_distance.txt");
-            Scanner myReader = new Scanner(myObj);
 
-            while (myReader.hasNextLine()) {
-                String data = myReader.nextLine();
-                String [] read_data = data.split(";");
-                this.euclidian_length.put(Integer.parseInt(read_data[0]), Double.parseDouble(read_data[1]));
-            }
-            myReader.close();
-        } catch (FileNotFoundException e) {
-            System.out.println("An error occurred.");
+    /** Serves queries over HTTP (see QueryServer). */
+    void serve() {
+        try {
+            server = new QueryServer( this, port, serverThreads );
+            server.start();
+        } catch ( IOException e ) {
             e.printStackTrace();
+            System.exit( 1 );
         }
-
-        decodeArgs( args );
-        indexer = new Indexer( index, kgIndex, patterns_file );
-        searcher = new Searcher( index, kgIndex ,ranking_hash,euclidian_length);
-        gui = new SearchGUI( this );
-        gui.init();
-        /* 
-         *   Calls the indexer to index the chosen directory structure.
-         *   Access to the index is synchronized since we don't want to 
-         *   search at the same time we're indexing new files (this might 
-         *   corrupt the index).
-         */
+    }
 
 
+    /** Shows a message in the GUI, or on standard error when running headless. */
+    void displayInfoText( String text ) {
+        if ( gui != null ) {
+            gui.displayInfoText( text );
+        } else {
+            System.err.println( text );
+        }
+    }
 
 
-        if (is_indexing) {
-            synchronized ( indexLock ) {
-                gui.displayInfoText( "Indexing, please wait..." );
-                long startTime = System.currentTimeMillis();
-                for ( int i=0; i<dirNames.size(); i++ ) {
-                    File dokDir = new File( dirNames.get( i ));
-                    indexer.processFiles( dokDir, is_indexing );
-                }
-                long elapsedTime = System.currentTimeMillis() - startTime;
-                gui.displayInfoText( String.format( "Indexing done in %.1f seconds.", elapsedTime/1000.0 ));
-                System.out.println("BEFORE LAST CLEAN UP");
-                index.cleanup();
-                System.out.println("AFTER LAST CLEAN UP");
-                print_index("ve");
-                print_index("th he");
+    /**
+     *  Joins the pageranks in the rank file to the documents of the
+     *  complete index, which keeps them as its priors. An index read from
+     *  disk already has the priors joined when it was built, and they are
+     *  only joined again if a rank file is given. Since such an index is
+     *  read-only, priors joined to it are not stored.
+     */
+    void joinPriors() {
+        if ( !is_indexing && rank_file == null && index.priors() != null ) {
+            return;
+        }
+        String fileName = rank_file != null ? rank_file : DocumentPriors.DEFAULT_FNAME;
+        if ( rank_file == null && !new File( fileName ).exists() ) {
+            return;
+        }
+        try {
+            index.setPriors( DocumentPriors.join( fileName, index.getDocuments() ));
+        } catch ( IOException e ) {
+            e.printStackTrace();
+        }
+    }
 
 
-            }
-        } else {
-            gui.displayInfoText( "Index is loaded from disk" );
-        }
+    /**
+     *  Makes the complete index searchable. The searcher is written to a
+     *  volatile field, so every thread that sees it also sees the whole
+     *  index as it was written before.
+     */
+    void publish() {
+        speller = new SpellChecker( index, kgIndex );
+        searcher = new Searcher( index, kgIndex );
     }
 
     public void print_index(String stri){
@@ -213,6 +262,29 @@ public class Engine {
             } else if ( "-ni".equals( args[i] )) {
                 i++;
                 is_indexing = false;
+            } else if ( "-threads".equals( args[i] )) {
+                i++;
+                if ( i < args.length ) {
+                    threads = Integer.parseInt( args[i++] );
+                }
+            } else if ( "-cache".equals( args[i] )) {
+                i++;
+                if ( i < args.length ) {
+                    cacheMB = Integer.parseInt( args[i++] );
+                }
+            } else if ( "-headless".equals( args[i] )) {
+                i++;
+                headless = true;
+            } else if ( "-port".equals( args[i] )) {
+                i++;
+                if ( i < args.length ) {
+                    port = Integer.parseInt( args[i++] );
+                }
+            } else if ( "-serverthreads".equals( args[i] )) {
+                i++;
+                if ( i < args.length ) {
+                    serverThreads = Integer.parseInt( args[i++] );
+                }
             } else {
                 System.err.println( "Unknown option: " + args[i] );
                 break;
@@ -226,6 +298,9 @@ public class Engine {
 
     public static void main( String[] args ) {
         Engine e = new Engine( args );
+        if ( e.headless ) {
+            e.serve();
+        }
     }
 
 }
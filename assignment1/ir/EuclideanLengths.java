@@ -0,0 +1,68 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+
+/**
+ *  Computes the euclidean lengths of the tf-idf vectors of documents,
+ *  the lengths that ranked queries are normalized by with
+ *  NormalizationType.EUCLIDEAN.
+ *
+ *  The idf of a term is only known once all documents are indexed, so
+ *  the lengths are computed in one pass over the postings of the
+ *  complete index: every posting adds the square of its tf-idf weight
+ *  to the sum of its document, in an array indexed by docID.
+ */
+class EuclideanLengths {
+
+    /** Sum of the squared weights of each document. */
+    private double[] sums = new double[1024];
+
+
+    /** Adds a posting with term frequency <code>tf</code> of a term with idf <code>idf</code>. */
+    void add( int docID, int tf, double idf ) {
+        if ( docID >= sums.length ) {
+            sums = Arrays.copyOf( sums, Math.max( 2 * sums.length, docID + 1 ));
+        }
+        double w = tf * idf;
+        sums[docID] += w * w;
+    }
+
+
+    /** Adds all postings of a term with idf <code>idf</code>. */
+    void add( PostingsList list, double idf ) {
+        for ( int i=0; i<list.size(); i++ ) {
+            add( list.docID( i ), list.tf( i ), idf );
+        }
+    }
+
+
+    /** Returns the lengths of documents 0 .. n-1. */
+    DocColumn toColumn( int n ) {
+        double[] lengths = new double[n];
+        for ( int i=0; i<Math.min( n, sums.length ); i++ ) {
+            lengths[i] = Math.sqrt( sums[i] );
+        }
+        return new DocColumn( lengths );
+    }
+
+
+    /**
+     *  Returns the lengths of documents 0 .. limit-1 of an index with
+     *  these postings lists and <code>n</code> documents. The docIDs
+     *  need not be dense, so <code>limit</code> may be larger than n.
+     */
+    static DocColumn of( Collection<PostingsList> lists, int n, int limit ) {
+        EuclideanLengths lengths = new EuclideanLengths();
+        for ( PostingsList list : lists ) {
+            lengths.add( list, Math.log( (double)n / list.size() ));
+        }
+        return lengths.toColumn( limit );
+    }
+}
@@ -7,6 +7,7 @@
 
 package ir;
 import java.util.*;
+import java.util.stream.IntStream;
 import java.io.*;
 
 
@@ -17,297 +18,202 @@ public class HITSRanker {
      */
     final static int MAX_NUMBER_OF_STEPS = 1000;
 
-    final static int MAX_NUMBER_OF_DOCS = 2000000;
-
     /**
      *   Convergence criterion: hub and authority scores do not 
      *   change more that EPSILON from one iteration to another.
      */
     final static double EPSILON = 0.00001;
 
+    /**
+     *   Base sets with more links than this are multiplied in parallel,
+     *   row by row
+     */
+    final static int PARALLEL_LINKS = 100000;
+
     /**
      *   The inverted index
      */
     Index index;
 
-    HashMap<Integer,String> davisTitles = new HashMap<Integer,String>();
-
+    /**
+     *   The link graph, shared by all queries
+     */
+    final LinkGraph graph;
 
     /**
-     *   Mapping from the titles to internal document ids used in the links file
+     *   The nodes of the query-specific graph, in increasing order: the
+     *   root set and the nodes that link to it or are linked from it.
+     *   Node base[i] is local node i.
      */
-    //HashMap<String,Integer> titleToId = new HashMap<String,Integer>();
+    int[] base = new int[0];
 
     /**
-     *   Sparse vector containing hub scores
+     *   The local node of each node of the graph in the base set. The
+     *   arrays have one element per node of the graph and are allocated
+     *   once, by the first query: local[node] is only valid if
+     *   marks[node] == epoch, so they need not be cleared between queries.
      */
-    HashMap<Integer,Double> hubs;
+    int[] local;
+    int[] marks;
+    int epoch = 0;
 
-    public HashMap<String,Integer> davisTitlesreversed = new HashMap<String,Integer>();
+    /**
+     *   The links within the base set, between local nodes, in
+     *   compressed sparse rows (see LinkGraph)
+     */
+    int[] outOffsets, outTargets, inOffsets, inSources;
 
-    HashSet<Integer> documents_baseset = new HashSet<Integer>();
+    /**
+     *   Hub scores of the local nodes
+     */
+    double[] hubs;
 
-    HashSet<Integer> root_set = new HashSet<Integer>();
     /**
-     *   Sparse vector containing authority scores
+     *   Authority scores of the local nodes
      */
-    HashMap<Integer,Double> authorities;
+    double[] authorities;
 
-    HashMap<Integer,Integer> good_mapping;
+    /**
+     *   Number of iterations of the last run, whether it converged, and
+     *   the largest change of the scores in its last iteration
+     */
+    int iterations;
+    boolean converged;
+    double change;
 
-    HashMap<String,Integer> docNumber = new HashMap<String,Integer>();
+    /* --------------------------------------------- */
 
     /**
-     *   Mapping from document numbers to document names
+     * Constructs a HITSRanker on the link graph <code>graph</code>, which
+     * can be shared by any number of rankers. A ranker ranks one query at
+     * a time, and is best reused for the next queries of its thread.
+     *
+     * @param      graph  The link graph, joined to the documents of the index
+     * @param      index  The inverted index
      */
-    String[] docName = new String[MAX_NUMBER_OF_DOCS];
-
-    HashMap<Integer,HashMap<Integer,Boolean>> a_matrix = new HashMap<Integer,HashMap<Integer,Boolean>>();
+    public HITSRanker( LinkGraph graph, Index index ) {
+        this.graph = graph;
+        this.index = index;
+    }
 
-    HashMap<Integer,HashMap<Integer,Boolean>> a_matrix_transpose = new HashMap<Integer,HashMap<Integer,Boolean>>();
-    /* --------------------------------------------- */
 
     /**
-     * Constructs the HITSRanker object
-     * 
-     * A set of linked documents can be presented as a graph.
-     * Each page is a node in graph with a distinct nodeID associated with it.
-     * There is an edge between two nodes if there is a link between two pages.
+     * Constructs the HITSRanker object, reading the link graph.
      * 
-     * Each line in the links file has the following format:
-     *  nodeID;outNodeID1,outNodeID2,...,outNodeIDK
-     * This means that there are edges between nodeID and outNodeIDi, where i is between 1 and K.
-     * 
-     * Each line in the titles file has the following format:
-     *  nodeID;pageTitle
-     *  
-     * NOTE: nodeIDs are consistent between these two files, but they are NOT the same
-     *       as docIDs used by search engine's Indexer
+     * See LinkGraph.read for the format of the links file and the titles
+     * file. NOTE: the nodeIDs of these two files are NOT the same as
+     * docIDs used by search engine's Indexer
      *
      * @param      linksFilename   File containing the links of the graph
      * @param      titlesFilename  File containing the mapping between nodeIDs and pages titles
-     * @param      index           The inverted index
+     * @param      index           The inverted index, or null
      */
-    public HITSRanker( String linksFilename, String titlesFilename, Index index ) {
-        this.index = index;
-        readDocs( linksFilename );
-
-        //this.a_matrix_transpose.remove(0);
-        //this.a_matrix.get(3164).remove(0);
-        populate_davisTitle(titlesFilename);
-        this.davisTitlesreversed = new HashMap<>();
-        for(Map.Entry<Integer,String> entry : this.davisTitles.entrySet()){
-            this.davisTitlesreversed.put(entry.getValue(), entry.getKey());
-        }
-
+    public HITSRanker( String linksFilename, String titlesFilename, Index index ) throws IOException {
+        this( LinkGraph.read( linksFilename, titlesFilename, index == null ? null : index.getDocuments() ), index );
     }
 
 
     /* --------------------------------------------- */
 
     /**
-     * A utility function that gets a file name given its path.
-     * For example, given the path "davisWiki/hello.f",
-     * the function will return "hello.f".
+     * Perform HITS iterations until convergence, or at most
+     * MAX_NUMBER_OF_STEPS iterations.
      *
-     * @param      path  The file path
-     *
-     * @return     The file name.
+     * Each iteration computes the new hub scores from the authority
+     * scores and the new authority scores from the hub scores, as
+     * products of the adjacency matrix of the base set (and its
+     * transpose) and a dense vector, and normalizes them.
      */
-    private String getFileName( String path ) {
-        String result = "";
-        StringTokenizer tok = new StringTokenizer( path, "\\/" );
-        while ( tok.hasMoreTokens() ) {
-            result = tok.nextToken();
+    void iterate() {
+        int n = base.length;
+        hubs = new double[n];
+        authorities = new double[n];
+        Arrays.fill( hubs, 1.0 );
+        Arrays.fill( authorities, 1.0 );
+        double[] newHubs = new double[n];
+        double[] newAuthorities = new double[n];
+        boolean parallel = outTargets.length > PARALLEL_LINKS;
+        converged = false;
+        for ( iterations=0; iterations<MAX_NUMBER_OF_STEPS && !converged; iterations++ ) {
+            multiply( outOffsets, outTargets, authorities, newHubs, parallel );
+            multiply( inOffsets, inSources, hubs, newAuthorities, parallel );
+            normalize( newHubs );
+            normalize( newAuthorities );
+            double hubChange = distance( newHubs, hubs );
+            double authorityChange = distance( newAuthorities, authorities );
+            change = Math.max( hubChange, authorityChange );
+            converged = hubChange <= EPSILON && authorityChange <= EPSILON;
+            double[] swap = hubs;
+            hubs = newHubs;
+            newHubs = swap;
+            swap = authorities;
+            authorities = newAuthorities;
+            newAuthorities = swap;
+        }
+        if ( !converged ) {
+            System.err.println( "HITS did not converge: " + summary() );
         }
-        return result;
     }
 
 
-    /**
-     * Reads the files describing the graph of the given set of pages.
-     *
-     * @param      linksFilename   File containing the links of the graph
-     */
-    int readDocs( String linksFilename) {
-        int fileIndex = 0;
-        try {
-            System.err.print( "Reading file... " );
-            BufferedReader in = new BufferedReader( new FileReader( linksFilename ));
-            String line;
-            while ((line = in.readLine()) != null && fileIndex<MAX_NUMBER_OF_DOCS ) {
-                int index = line.indexOf( ";" );
-                String title = line.substring( 0, index );
-                Integer fromdoc = docNumber.get( title );
-                //  Have we seen this document before?
-                if ( fromdoc == null ) {
-                    // This is a previously unseen doc, so add it to the table.
-                    fromdoc = fileIndex++;
-                    docNumber.put( title, fromdoc );
-                    docName[fromdoc] = title;
-                }
-                // Check all outlinks.
-                StringTokenizer tok = new StringTokenizer( line.substring(index+1), "," );
-                while ( tok.hasMoreTokens() && fileIndex<MAX_NUMBER_OF_DOCS ) {
-                    String otherTitle = tok.nextToken();
-                    Integer otherDoc = docNumber.get( otherTitle );
-                    if ( otherDoc == null ) {
-                        // This is a previousy unseen doc, so add it to the table.
-                        otherDoc = fileIndex++;
-                        docNumber.put( otherTitle, otherDoc );
-                        docName[otherDoc] = otherTitle;
-                    }
-                    // Set the probability to 0 for now, to indicate that there is
-                    // a link from fromdoc to otherDoc.
-                    if ( a_matrix.get(fromdoc) == null) {
-                        a_matrix.put(fromdoc, new HashMap<Integer,Boolean>());
-                    }
-                    if ( a_matrix.get(fromdoc).get(otherDoc) == null) {
-                        a_matrix.get(fromdoc).put( otherDoc, true );
-                    }
-
-                    if ( a_matrix_transpose.get(otherDoc) == null) {
-                        a_matrix_transpose.put(otherDoc, new HashMap<Integer,Boolean>());
-                    }
-                    if ( a_matrix_transpose.get(otherDoc).get(fromdoc) == null) {
-                        a_matrix_transpose.get(otherDoc).put( fromdoc, true );
-                    }
-                }
-            }
-            if ( fileIndex >= MAX_NUMBER_OF_DOCS ) {
-                System.err.print( "stopped reading since documents table is full. " );
-            }
-            else {
-                System.err.print( "done. " );
-            }
-        }
-        catch ( FileNotFoundException e ) {
-            System.err.println( "File " + linksFilename + " not found!" );
-        }
-        catch ( IOException e ) {
-            System.err.println( "Error reading file " + linksFilename );
-        }
-        System.err.println( "Read " + fileIndex + " number of documents" );
-        return fileIndex;
+    /** Returns the size of the base set and the convergence of the last run. */
+    String summary() {
+        return String.format( "%d pages, %d links, %s after %d iterations (change %.3g)",
+                              base.length, outTargets.length, converged ? "converged" : "stopped",
+                              iterations, change );
     }
 
+
     /**
-     * Perform HITS iterations until convergence
-     *
-     * @param      titles  The titles of the documents in the root set
+     * Computes <code>y = A x</code>, where row i of the sparse matrix A
+     * has ones in the columns <code>targets[offsets[i] .. offsets[i+1]-1]</code>.
+     * The rows are independent, so they may be computed in parallel.
      */
-    private void iterate(String[] titles) {
-        initialize_algorithm();
-        double conv1 = 100;
-        double conv2 = 100;
-        while(conv1>EPSILON || conv2 >EPSILON) {
-            HashMap<Integer, Double> updated_hubs = update_hub();
-            HashMap<Integer, Double> updated_auth = update_authoroties();
-            conv1 = check_convergence(updated_auth,this.authorities);
-            conv2 = check_convergence(updated_hubs,this.hubs);
-            this.authorities = updated_auth;
-            this.hubs = updated_hubs;
+    static void multiply( int[] offsets, int[] targets, double[] x, double[] y, boolean parallel ) {
+        if ( parallel ) {
+            IntStream.range( 0, y.length ).parallel().forEach( i -> y[i] = row( offsets, targets, x, i ));
+        } else {
+            for ( int i=0; i<y.length; i++ ) {
+                y[i] = row( offsets, targets, x, i );
+            }
         }
     }
 
-    public double check_convergence(HashMap<Integer, Double> vector1, HashMap<Integer, Double> vector2){
-        double sum = 0.0;
-        for(Integer base: this.documents_baseset){
-            sum += Math.pow((vector1.get(base)-vector2.get(base)),2);
+
+    private static double row( int[] offsets, int[] targets, double[] x, int i ) {
+        double sum = 0;
+        for ( int k=offsets[i]; k<offsets[i+1]; k++ ) {
+            sum += x[targets[k]];
         }
         return sum;
     }
 
-    public HashMap<Integer, Double> update_hub() {
-        HashMap<Integer, Double> new_hubs = new HashMap<Integer, Double>();
-        for (Integer ind :this.documents_baseset) {
-                if(this.a_matrix.containsKey(ind)) {
-                    HashMap<Integer, Boolean> col = this.a_matrix.get(ind);
-                    double sum = 0;
-                    for (Map.Entry<Integer, Boolean> e : col.entrySet()) {
-                        Integer key = e.getKey();
-                        if (this.authorities.containsKey(key)) {
-                            sum = sum + this.authorities.get(key);
-                        }
-                    }
-                    new_hubs.put(ind, sum);
-                }
-                else{
-                    new_hubs.put(ind, 0.0);
-                }
-        }
-        //Normalization
-        double total = 0.0;
-        for(Map.Entry<Integer, Double> norm : new_hubs.entrySet()){
-            Double val = norm.getValue();
-            total = total + Math.pow(val,2);
-        }
-        total = Math.sqrt(total);
 
-        for(Map.Entry<Integer, Double> norm : new_hubs.entrySet()){
-            norm.setValue(norm.getValue()/total);
+    /** Scales <code>x</code> to euclidean length 1, unless it is all zeros. */
+    static void normalize( double[] x ) {
+        double total = 0;
+        for ( double v : x ) {
+            total += v * v;
         }
-        return new_hubs;
-    }
-
-    public HashMap<Integer, Double> update_authoroties(){
-        HashMap<Integer, Double> new_hubs = new HashMap<Integer, Double>();
-
-        for (Integer ind :this.documents_baseset) {
-            if(this.a_matrix_transpose.containsKey(ind)) {
-                HashMap<Integer, Boolean> col = this.a_matrix_transpose.get(ind);
-                double sum = 0;
-                for (Map.Entry<Integer, Boolean> e : col.entrySet()) {
-                    Integer key = e.getKey();
-                    if(this.hubs.containsKey(key)) {
-                        sum = sum + this.hubs.get(key);
-                    }
-                }
-                new_hubs.put(ind, sum);
-            }else{
-                new_hubs.put( ind,0.0);
+        total = Math.sqrt( total );
+        if ( total > 0 ) {
+            for ( int i=0; i<x.length; i++ ) {
+                x[i] /= total;
             }
-
-        }
-
-        //Normalization
-        double total = 0.0;
-        for(Map.Entry<Integer, Double> norm : new_hubs.entrySet()){
-            Double val = norm.getValue();
-            total = total + Math.pow(val,2);
         }
-        total = Math.sqrt(total);
-
-        for(Map.Entry<Integer, Double> norm : new_hubs.entrySet()){
-            norm.setValue(norm.getValue()/total);
-        }
-        return new_hubs;
     }
 
-    public void initialize_algorithm(){
-        this.authorities = new HashMap<>();
-        this.hubs = new HashMap<>();
-        for (Integer doc : this.documents_baseset) {
-            this.authorities.put(doc,1.0);
-            this.hubs.put(doc,1.0);
+
+    /** Returns the squared euclidean distance between <code>x</code> and <code>y</code>. */
+    static double distance( double[] x, double[] y ) {
+        double sum = 0;
+        for ( int i=0; i<x.length; i++ ) {
+            double d = x[i] - y[i];
+            sum += d * d;
         }
+        return sum;
     }
 
-    /**
-     * Rank the documents in the subgraph induced by the documents present
-     * in the postings list `post`.
-     *
-     * @param      post  The list of postings fulfilling a certain information need
-     *
-     * @return     A list of postings ranked according to the hub and authority scores.
-     */
-    //PostingsList rank(PostingsList post) {
-        //
-        // YOUR CODE HERE
-        //
-        //return null;
-    //}
-
 
     /**
      * Sort a hash map by values in the descending order
@@ -352,7 +258,7 @@ public class HITSRanker {
                 int i = 0;
                 for (Map.Entry<Integer,Double> e : map.entrySet()) {
                     i++;
-                    writer.write(docName[e.getKey()] + ": " + String.format("%.5g%n", e.getValue()));
+                    writer.write(graph.name(e.getKey()) + ": " + String.format("%.5g%n", e.getValue()));
                     if (i >= k) break;
                 }
             }
@@ -362,181 +268,157 @@ public class HITSRanker {
 
 
     /**
-     * Rank all the documents in the links file. Produces two files:
-     *  hubs_top_30.txt with documents containing top 30 hub scores
-     *  authorities_top_30.txt with documents containing top 30 authority scores
+     * Ranks the documents of the query-specific graph of the documents
+     * that match any of the query terms, by the sum of their hub and
+     * authority scores.
      */
     PostingsList rank(ArrayList<String> query) {
-        Integer [] root_set = get_root_set(query);
-        get_baseset(root_set);
-        iterate(docNumber.keySet().toArray(new String[0]));
-
-        PostingsList plist = create_postingList();
-        //HashMap<Integer,Double> sortedHubs = sortHashMapByValue(hubs);
-        //HashMap<Integer,Double> sortedAuthorities = sortHashMapByValue(authorities);
-        //writeToFile(sortedHubs, "hubs_top_30.txt", 30);
-        //writeToFile(sortedAuthorities, "authorities_top_30.txt", 30);
-        return plist;
+        get_baseset(get_root_set(query));
+        iterate();
+        return create_postingList();
     }
-    PostingsList create_postingList(){
-        HashMap<String,Integer> indexdocnamesreversed = new HashMap<>();
-        for(Map.Entry<Integer,String> entry : this.index.docNames.entrySet()){
-            String [] fileName = entry.getValue().split("/davisWiki/");
-            indexdocnamesreversed.put(fileName[fileName.length-1], entry.getKey());
-        }
 
+    PostingsList create_postingList(){
         PostingsList plist = new PostingsList();
-        //NEW ADDED: before this.documents_baseset
-        for(Integer document :this.documents_baseset){
-            if(document !=null) {
+        for (int i = 0; i < base.length; i++) {
+            int docID = graph.docID(base[i]);
+            if (docID >= 0) {
                 PostingsEntry pentry = new PostingsEntry();
-                if (this.davisTitles.containsKey(Integer.parseInt(docName[document]))) {
-                    String file_name = this.davisTitles.get(Integer.parseInt(docName[document]));
-                    if (indexdocnamesreversed.containsKey(file_name)) {
-                        int docID = indexdocnamesreversed.get(file_name);
-                        //pentry.docID = Integer.parseInt(docName[document]);
-                        pentry.docID = docID;
-                        pentry.score = hubs.get(document) + authorities.get(document);
-                        plist.set(pentry);
-                    }
-                }
+                pentry.docID = docID;
+                pentry.score = hubs[i] + authorities[i];
+                plist.set(pentry);
             }
-
         }
         return plist;
     }
 
+    /**
+     * Rank all the documents in the links file. Produces two files:
+     *  hubs_top_30.txt with documents containing top 30 hub scores
+     *  authorities_top_30.txt with documents containing top 30 authority scores
+     */
     void rank_all_top30(){
-        this.documents_baseset = new HashSet<>();
-        String titles [] = docNumber.keySet().toArray(new String[0]);
-        for (String title : titles) {
-            documents_baseset.add(Integer.parseInt(title));
+        int [] all = new int[graph.size()];
+        for (int node = 0; node < all.length; node++) {
+            all[node] = node;
         }
-        iterate(titles);
-        HashMap<Integer,Double> sortedHubs = sortHashMapByValue(hubs);
-        HashMap<Integer,Double> sortedAuthorities = sortHashMapByValue(authorities);
+        get_baseset(all);
+        iterate();
+        System.err.println("HITS: " + summary());
+        HashMap<Integer,Double> hubScores = new HashMap<Integer,Double>();
+        HashMap<Integer,Double> authorityScores = new HashMap<Integer,Double>();
+        for (int i = 0; i < base.length; i++) {
+            hubScores.put(base[i], hubs[i]);
+            authorityScores.put(base[i], authorities[i]);
+        }
+        HashMap<Integer,Double> sortedHubs = sortHashMapByValue(hubScores);
+        HashMap<Integer,Double> sortedAuthorities = sortHashMapByValue(authorityScores);
         writeToFile(sortedHubs, "hubs_top_30.txt", 30);
         writeToFile(sortedAuthorities, "authorities_top_30.txt", 30);
     }
 
-    public Integer [] get_root_set(ArrayList<String> query){
-        PostingsList p1 = index.getPostings(query.get(0));
-        for(int i=1;i<query.size();i++){
-            PostingsList p2 = index.getPostings(query.get(i));
-            p1 = union(p1,p2);
-        }
-        Integer [] internal_ids = new Integer[p1.getList().size()];
-        for(int i=0; i<p1.getList().size(); i++){
-            PostingsEntry p_entry = p1.get(i);
-            int doc_id = p_entry.docID;
-            String title = this.index.docNames.get(doc_id);
-            String [] files= title.split("/davisWiki/");
-            title = files[files.length-1];
-            if(title!=null) {
-                if(this.davisTitlesreversed.containsKey(title)) {
-                    int internal_id = this.davisTitlesreversed.get(title);
-                    internal_ids[i] = docNumber.get(String.valueOf(internal_id));
-                    this.root_set.add(docNumber.get(String.valueOf(internal_id)));
+    /**
+     * Returns the nodes of the documents matching any of the query terms
+     * (the root set), possibly more than once. Documents that are not in
+     * the link graph are left out.
+     */
+    public int [] get_root_set(ArrayList<String> query){
+        int [] internal_ids = new int[16];
+        int n = 0;
+        for (String term : query) {
+            PostingsList list = index.getPostings(term);
+            for (int i = 0; list != null && i < list.size(); i++) {
+                int node = graph.node(list.docID(i));
+                if (node >= 0) {
+                    if (n == internal_ids.length) {
+                        internal_ids = Arrays.copyOf(internal_ids, 2 * n);
+                    }
+                    internal_ids[n++] = node;
                 }
             }
-            //internal_ids[i] = docNumber.get(String.valueOf(doc_id));
-            //this.root_set.add(docNumber.get(String.valueOf(doc_id)));
-
         }
-        return internal_ids;
+        return Arrays.copyOf(internal_ids, n);
     }
 
-    public void get_baseset(Integer [] root_set){
-        for(int i=0; i<root_set.length; i++){
-            if(a_matrix.containsKey(root_set[i])) {
-                HashMap<Integer, Boolean> links = a_matrix.get(root_set[i]);
-                for (Map.Entry<Integer, Boolean> entry : links.entrySet()) {
-                    if(entry.getKey()!=null) {
-                        documents_baseset.add(entry.getKey());
-                    }
-                }
+    /**
+     * Collects the base set of the root set <code>root_set</code>, numbers
+     * its nodes in increasing order, and extracts the links between them
+     * from the graph. The work is proportional to the number of links of
+     * the root set, not to the size of the graph.
+     */
+    public void get_baseset(int [] root_set){
+        if (local == null) {
+            local = new int[graph.size()];
+            marks = new int[graph.size()];
+        }
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(marks, 0);
+            epoch = 1;
+        }
+        base = new int[16];
+        int n = 0;
+        for (int node : root_set) {
+            n = mark(node, n);
+            for (int k = graph.outOffsets[node]; k < graph.outOffsets[node + 1]; k++) {
+                n = mark(graph.outTargets[k], n);
             }
-            if(a_matrix_transpose.containsKey(root_set[i])) {
-                HashMap<Integer, Boolean> links_transposed = a_matrix_transpose.get(root_set[i]);
-                for (Map.Entry<Integer, Boolean> entry2 : links_transposed.entrySet()) {
-                    if(entry2.getKey()!=null) {
-                        documents_baseset.add(entry2.getKey());
-                    }
-                }
+            for (int k = graph.inOffsets[node]; k < graph.inOffsets[node + 1]; k++) {
+                n = mark(graph.inSources[k], n);
             }
-            //NEW ADDED
-            documents_baseset.add(root_set[i]);
         }
+        base = Arrays.copyOf(base, n);
+        Arrays.sort(base);
+        for (int i = 0; i < n; i++) {
+            local[base[i]] = i;
+        }
+        outOffsets = new int[n + 1];
+        outTargets = subgraph(graph.outOffsets, graph.outTargets, outOffsets);
+        inOffsets = new int[n + 1];
+        inSources = subgraph(graph.inOffsets, graph.inSources, inOffsets);
     }
 
-
-
-
-
-    public void populate_davisTitle(String title){
-        try {
-            File myObj = new File(title);
-            Scanner myReader = new Scanner(myObj);
-            while (myReader.hasNextLine()) {
-                String data = myReader.nextLine();
-                String [] read_data = data.split(";");
-                this.davisTitles.put(Integer.parseInt(read_data[0]), read_data[1]);
-            }
-            myReader.close();
-        } catch (FileNotFoundException e) {
-            System.out.println("An error occurred.");
-            e.printStackTrace();
+    /**
+     * Adds <code>node</code> to the n nodes of the base set found so far,
+     * unless it is already there, and returns the new number of nodes.
+     */
+    private int mark(int node, int n) {
+        if (marks[node] == epoch) {
+            return n;
         }
-
+        marks[node] = epoch;
+        if (n == base.length) {
+            base = Arrays.copyOf(base, 2 * n);
+        }
+        base[n] = node;
+        return n + 1;
     }
 
-
-
-
-
-    public PostingsList union(PostingsList p1, PostingsList p2){
-        PostingsList p3 = new PostingsList();
-        int  l1 = p1.size();
-        int l2 = p2.size();
-        int i1 = 0;
-        int i2 = 0;
-        if (l1>0 && l2>0){
-            while (i1 < l1 && i2 < l2) {
-                PostingsEntry pp1 = p1.get(i1);
-                PostingsEntry pp2 = p2.get(i2);
-                if (pp1.docID == pp2.docID) {
-                    pp1.sum_score_toentry(pp2.score);
-                    p3.set(pp1);
-                    i1 = i1 + 1;
-                    i2 = i2 + 1;
-
-                } else if (pp1.docID < pp2.docID) {
-                    p3.set(pp1);
-                    i1 = i1 + 1;
-                } else {
-                    p3.set(pp2);
-                    i2 = i2 + 1;
-                }
-            }
-            if (i1 < l1) {
-                while(i1<l1){
-                    PostingsEntry pp1 = p1.get(i1);
-                    p3.set(pp1);
-                    i1 = i1 + 1;
-                }
-            } else if (i2 < l2) {
-                while(i2<l2){
-                    PostingsEntry pp2 = p2.get(i2);
-                    p3.set(pp2);
-                    i2 = i2 + 1;
+    /**
+     * Returns the rows of the base set nodes of a graph in compressed
+     * sparse rows, keeping only the links to other base set nodes, in
+     * local numbers. The row offsets are stored in <code>subOffsets</code>.
+     */
+    private int [] subgraph(int [] offsets, int [] targets, int [] subOffsets) {
+        int links = 0;
+        for (int node : base) {
+            links += offsets[node + 1] - offsets[node];
+        }
+        int [] subTargets = new int[links];
+        int m = 0;
+        for (int i = 0; i < base.length; i++) {
+            subOffsets[i] = m;
+            for (int k = offsets[base[i]]; k < offsets[base[i] + 1]; k++) {
+                int target = targets[k];
+                if (marks[target] == epoch) {
+                    subTargets[m++] = local[target];
                 }
             }
         }
-        return p3;
+        subOffsets[base.length] = m;
+        return m == links ? subTargets : Arrays.copyOf(subTargets, m);
     }
 
 
-
     /* --------------------------------------------- */
 
 
@@ -545,10 +427,12 @@ public class HITSRanker {
             System.err.println( "Please give the names of the link and title files" );
         }
         else {
-            HITSRanker hr = new HITSRanker( args[0], args[1], null );
-            //ArrayList<String> query = new ArrayList<String>();
-            //hr.rank(query);
-            hr.rank_all_top30();
+            try {
+                HITSRanker hr = new HITSRanker( args[0], args[1], null );
+                hr.rank_all_top30();
+            } catch ( IOException e ) {
+                System.err.println( "Error reading the link graph: " + e.getMessage() );
+            }
 
         }
     }
@@ -21,21 +21,40 @@ public class HashedIndex implements Index {
     /** The index as a hashtable. */
     private HashMap<String,PostingsList> index = new HashMap<String,PostingsList>();
 
+    /** The names and lengths of the documents. */
+    private final DocumentTable documents = new DocumentTable();
+
+    /** The euclidean lengths of the documents, once cleanup() has computed them. */
+    private DocColumn euclideanLengths;
+
+    /** The static scores of the documents, or null if they have none. */
+    private DocColumn priors;
+
 
     /**
      *  Inserts this token in the hashtable.
      */
     public void insert( String token, int docID, int offset ) {
         PostingsList post_list = getPostings(token);
-        PostingsEntry post_entry = new PostingsEntry();
-        post_entry.docID = docID;
-        post_entry.offsetList.add(offset);
         if (post_list == null){
-            PostingsList p_list = new PostingsList();
-            p_list.set(post_entry);
-            index.put(token,p_list);
+            post_list = new PostingsList();
+            index.put(token,post_list);
+        }
+        post_list.add(docID, offset);
+    }
+
+
+    /**
+     *  Inserts all postings of a token at once.
+     */
+    public void insertPostings( String token, PostingsList postings ) {
+        PostingsList post_list = getPostings(token);
+        if (post_list == null){
+            index.put(token,postings);
         }else{
-           post_list.set(post_entry);
+            for (int i=0; i<postings.size(); i++){
+                post_list.append(postings, i);
+            }
         }
     }
 
@@ -51,9 +70,37 @@ public class HashedIndex implements Index {
     }
 
 
+    public DocumentTable getDocuments() {
+        return documents;
+    }
+
+
     /**
-     *  No need for cleanup in a HashedIndex.
+     *  Returns the euclidean lengths of the documents, or null before cleanup().
+     */
+    public DocColumn euclideanLengths() {
+        return euclideanLengths;
+    }
+
+
+    public DocColumn priors() {
+        return priors;
+    }
+
+
+    public void setPriors( DocColumn priors ) {
+        this.priors = priors;
+    }
+
+
+    /**
+     *  Releases the spare capacity of the postings lists once indexing is
+     *  done, and computes the euclidean lengths of the documents.
      */
     public void cleanup() {
+        for ( PostingsList list : index.values() ) {
+            list.trim();
+        }
+        euclideanLengths = EuclideanLengths.of( index.values(), documents.size(), documents.limit() );
     }
 }
@@ -7,7 +7,6 @@
 
 package ir;
 
-import java.util.HashMap;
 import java.util.Iterator;
 
 /**
@@ -16,18 +15,64 @@ import java.util.Iterator;
  */
 public interface Index {
 
-    /** Mapping from document identifiers to document names. */
-    public HashMap<Integer,String> docNames = new HashMap<Integer,String>();
-    
-    /** Mapping from document identifier to document length. */
-    public HashMap<Integer,Integer> docLengths = new HashMap<Integer,Integer>();
+    /** Returns the names and lengths of the documents of this index. */
+    public DocumentTable getDocuments();
 
     /** Inserts a token into the index. */
     public void insert( String token, int docID, int offset );
 
+    /**
+     *  Inserts all postings of a token at once. The postings must come
+     *  after all postings inserted so far for the token. The index may
+     *  keep <code>postings</code> instead of copying it.
+     */
+    public default void insertPostings( String token, PostingsList postings ) {
+        for ( int i=0; i<postings.size(); i++ ) {
+            for ( int j=0; j<postings.tf( i ); j++ ) {
+                insert( token, postings.docID( i ), postings.position( i, j ));
+            }
+        }
+    }
+
     /** Returns the postings for a given term. */
     public PostingsList getPostings( String token );
 
+    /**
+     *  Returns the statistics of a term, or null if the term is not in
+     *  the index. Indexes that store the statistics can return them
+     *  without reading the postings.
+     */
+    public default TermStats getTermStats( String token ) {
+        PostingsList list = getPostings( token );
+        return list == null ? null : TermStats.of( list, getDocuments() );
+    }
+
+    /**
+     *  Returns the euclidean lengths of the tf-idf vectors of the
+     *  documents, or null if they are not known. They are computed by
+     *  cleanup(), and persistent indexes store them (see PersistentHashedIndex).
+     */
+    public default DocColumn euclideanLengths() {
+        return null;
+    }
+
+    /**
+     *  Returns the static scores of the documents (their pageranks, see
+     *  DocumentPriors), or null if the index has none.
+     */
+    public default DocColumn priors() {
+        return null;
+    }
+
+    /**
+     *  Sets the static scores of the documents of the complete index.
+     *  Persistent indexes store them, so they are only joined to the
+     *  documents once.
+     */
+    public default void setPriors( DocColumn priors ) {
+        throw new UnsupportedOperationException( getClass().getSimpleName() + " has no priors" );
+    }
+
     /** This method is called on exit. */
     public void cleanup();
 
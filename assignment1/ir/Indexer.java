@@ -9,6 +9,7 @@ package ir;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.nio.charset.*;
 
 
@@ -29,6 +30,12 @@ public class Indexer {
     /** The patterns matching non-standard words (e-mail addresses, etc.) */
     String patterns_file;
 
+    /** Number of threads tokenizing files. With 1 thread, files are indexed serially. */
+    int threads = 1;
+
+    /** Number of files tokenized together by one worker thread. */
+    static final int BATCH_SIZE = 256;
+
 
     /* ----------------------------------------------- */
 
@@ -41,6 +48,13 @@ public class Indexer {
     }
 
 
+    /** Constructor for an indexer that tokenizes with <code>threads</code> threads. */
+    public Indexer( Index index, KGramIndex kgIndex, String patterns_file, int threads ) {
+        this( index, kgIndex, patterns_file );
+        this.threads = Math.max( 1, threads );
+    }
+
+
     /** Generates a new document identifier as an integer. */
     private int generateDocID() {
         return lastDocID++;
@@ -53,6 +67,10 @@ public class Indexer {
      *  all its files and subdirectories are recursively processed.
      */
     public void processFiles( File f, boolean is_indexing ) {
+        if (is_indexing && threads > 1) {
+            processFilesParallel( f );
+            return;
+        }
         // do not try to index fs that cannot be read
         if (is_indexing) {
             if ( f.canRead() ) {
@@ -76,8 +94,7 @@ public class Indexer {
                             String token = tok.nextToken();
                             insertIntoIndex(docID, token, offset++ );
                         }
-                        index.docNames.put( docID, f.getPath() );
-                        index.docLengths.put( docID, offset );
+                        index.getDocuments().add( docID, f.getPath(), offset );
                         reader.close();
                     } catch ( IOException e ) {
                         System.err.println( "Warning: IOException during indexing." );
@@ -91,6 +108,147 @@ public class Indexer {
     /* ----------------------------------------------- */
 
 
+    /**
+     *  The postings of a batch of consecutive documents, built by one
+     *  worker thread.
+     */
+    static class Partial {
+        /** docID of the first document of the batch. */
+        int firstDocID;
+
+        /** Document names (null if the file could not be read) and lengths. */
+        String[] names;
+        int[] lengths;
+
+        /** The postings, with the tokens in the order they were first seen. */
+        LinkedHashMap<String,PostingsList> postings = new LinkedHashMap<String,PostingsList>();
+    }
+
+
+    /**
+     *  Indexes all files below <code>f</code> with several threads.
+     *
+     *  The files are first listed in the order in which processFiles
+     *  visits them, and get the same docIDs. Batches of BATCH_SIZE files
+     *  are then tokenized by the worker threads, each into its own
+     *  partial index. The calling thread merges the partial indexes into
+     *  the index in docID order, so the result is identical to serial
+     *  indexing. At most 2*threads batches are in flight at a time.
+     *  If a batch fails, its exception is thrown and indexing stops.
+     */
+    void processFilesParallel( File f ) {
+        ArrayList<File> files = new ArrayList<File>();
+        listFiles( f, files );
+        ExecutorService pool = Executors.newFixedThreadPool( threads );
+        ArrayDeque<Future<Partial>> inFlight = new ArrayDeque<Future<Partial>>();
+        int next = 0;
+        try {
+            while ( next < files.size() || !inFlight.isEmpty() ) {
+                while ( next < files.size() && inFlight.size() < 2*threads ) {
+                    final List<File> batch = files.subList( next, Math.min( next + BATCH_SIZE, files.size() ));
+                    final int firstDocID = lastDocID;
+                    lastDocID += batch.size();
+                    next += batch.size();
+                    inFlight.add( pool.submit( () -> tokenizeBatch( batch, firstDocID )));
+                }
+                mergePartial( inFlight.poll().get() );
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        } catch ( ExecutionException e ) {
+            // A batch failed: the index would be incomplete, so indexing
+            // stops with the error of the batch, as it does when serial.
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException)cause;
+            }
+            if ( cause instanceof Error ) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException( cause );
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+
+    /**
+     *  Lists the files below <code>f</code> in the order processFiles visits them.
+     */
+    void listFiles( File f, ArrayList<File> files ) {
+        if ( f.canRead() ) {
+            if ( f.isDirectory() ) {
+                String[] fs = f.list();
+                if ( fs != null ) {
+                    for ( int i=0; i<fs.length; i++ ) {
+                        listFiles( new File( f, fs[i] ), files );
+                    }
+                }
+            } else {
+                files.add( f );
+            }
+        }
+    }
+
+
+    /**
+     *  Tokenizes a batch of files into a partial index. Runs on a worker thread.
+     */
+    Partial tokenizeBatch( List<File> batch, int firstDocID ) {
+        Partial partial = new Partial();
+        partial.firstDocID = firstDocID;
+        partial.names = new String[batch.size()];
+        partial.lengths = new int[batch.size()];
+        for ( int i=0; i<batch.size(); i++ ) {
+            File f = batch.get( i );
+            int docID = firstDocID + i;
+            try {
+                Reader reader = new InputStreamReader( new FileInputStream(f), StandardCharsets.UTF_8 );
+                Tokenizer tok = new Tokenizer( reader, true, false, true, patterns_file );
+                int offset = 0;
+                while ( tok.hasMoreTokens() ) {
+                    String token = tok.nextToken();
+                    PostingsList list = partial.postings.get( token );
+                    if ( list == null ) {
+                        list = new PostingsList();
+                        partial.postings.put( token, list );
+                    }
+                    list.add( docID, offset++ );
+                }
+                partial.names[i] = f.getPath();
+                partial.lengths[i] = offset;
+                reader.close();
+            } catch ( IOException e ) {
+                System.err.println( "Warning: IOException during indexing." );
+            }
+        }
+        return partial;
+    }
+
+
+    /**
+     *  Adds a partial index to the index. Partial indexes must be merged
+     *  in docID order.
+     */
+    void mergePartial( Partial partial ) {
+        for ( Map.Entry<String,PostingsList> e : partial.postings.entrySet() ) {
+            index.insertPostings( e.getKey(), e.getValue() );
+            if ( kgIndex != null )
+                kgIndex.insert( e.getKey() );
+        }
+        for ( int i=0; i<partial.names.length; i++ ) {
+            int docID = partial.firstDocID + i;
+            if ( docID%1000 == 0 ) System.err.println( "Indexed " + docID + " files" );
+            if ( partial.names[i] != null ) {
+                index.getDocuments().add( docID, partial.names[i], partial.lengths[i] );
+            }
+        }
+    }
+
+
+    /* ----------------------------------------------- */
+
+
     /**
      *  Indexes one token.
      */
@@ -0,0 +1,168 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.util.*;
+
+
+/**
+ *  Compares the intersection of postings lists used before (one step
+ *  at a time, in query order) with the galloping, rarest-first
+ *  intersection of Searcher, on two- and three-term queries mixing
+ *  frequent, medium and rare terms.
+ *
+ *  Usage: java -cp classes ir.IntersectionBenchmark -d dir [-p patterns_file] [-n queries] [-r rounds]
+ */
+public class IntersectionBenchmark {
+
+    /** The intersection used before: advances one posting at a time. */
+    static PostingsList linearIntersection( PostingsList p1, PostingsList p2 ) {
+        PostingsList p3 = new PostingsList();
+        int i1 = 0, i2 = 0;
+        while ( i1 < p1.size() && i2 < p2.size() ) {
+            int d1 = p1.docID( i1 ), d2 = p2.docID( i2 );
+            if ( d1 == d2 ) {
+                p3.append( p1, i1 );
+                i1++;
+                i2++;
+            } else if ( d1 < d2 ) {
+                i1++;
+            } else {
+                i2++;
+            }
+        }
+        return p3;
+    }
+
+
+    /** Runs all queries the old way. Returns the total number of results. */
+    static long runLinear( ArrayList<PostingsList[]> queries ) {
+        long results = 0;
+        for ( PostingsList[] q : queries ) {
+            PostingsList r = q[0];
+            for ( int i=1; i<q.length; i++ ) {
+                r = linearIntersection( r, q[i] );
+            }
+            results += r.size();
+        }
+        return results;
+    }
+
+
+    /** Runs all queries the way Searcher.search_engine_intersection does. */
+    static long runGalloping( Searcher searcher, ArrayList<PostingsList[]> queries ) {
+        long results = 0;
+        for ( PostingsList[] q : queries ) {
+            PostingsList[] lists = q.clone();
+            Arrays.sort( lists, (a, b) -> Integer.compare( a.size(), b.size() ));
+            PostingsList r = lists[0];
+            for ( int i=1; i<lists.length && r.size() > 0; i++ ) {
+                r = searcher.interesection( r, lists[i] );
+            }
+            results += r.size();
+        }
+        return results;
+    }
+
+
+    public static void main( String[] args ) {
+        String dir = null;
+        String patterns_file = null;
+        int numQueries = 2000;
+        int rounds = 20;
+        for ( int i=0; i<args.length; i++ ) {
+            if ( "-d".equals( args[i] ) && i+1 < args.length ) {
+                dir = args[++i];
+            } else if ( "-p".equals( args[i] ) && i+1 < args.length ) {
+                patterns_file = args[++i];
+            } else if ( "-n".equals( args[i] ) && i+1 < args.length ) {
+                numQueries = Integer.parseInt( args[++i] );
+            } else if ( "-r".equals( args[i] ) && i+1 < args.length ) {
+                rounds = Integer.parseInt( args[++i] );
+            } else {
+                System.err.println( "Unknown option: " + args[i] );
+            }
+        }
+        if ( dir == null ) {
+            System.err.println( "Usage: IntersectionBenchmark -d dir [-p patterns_file] [-n queries] [-r rounds]" );
+            return;
+        }
+
+        HashedIndex index = new HashedIndex();
+        HashSet<String> terms = new HashSet<String>();
+        Indexer indexer = new Indexer( new Index() {
+                public void insert( String token, int docID, int offset ) {
+                    index.insert( token, docID, offset );
+                    terms.add( token );
+                }
+                public PostingsList getPostings( String token ) {
+                    return index.getPostings( token );
+                }
+                public void cleanup() {
+                    index.cleanup();
+                }
+                public DocumentTable getDocuments() {
+                    return index.getDocuments();
+                }
+            }, null, patterns_file );
+        indexer.processFiles( new File( dir ), true );
+        index.cleanup();
+
+        // Terms by decreasing document frequency
+        ArrayList<String> byDf = new ArrayList<String>( terms );
+        Collections.sort( byDf );
+        byDf.sort( (a, b) -> Integer.compare( index.getPostings( b ).size(), index.getPostings( a ).size() ));
+        int n = byDf.size();
+        List<String> frequent = byDf.subList( 0, Math.max( 1, n / 100 ));
+        List<String> medium = byDf.subList( n / 100, Math.max( n / 100 + 1, n / 10 ));
+        List<String> rare = byDf.subList( n / 10, Math.max( n / 10 + 1, n / 2 ));
+        System.err.println( String.format( "%d unique words; df of frequent terms %d..%d, medium %d..%d, rare %d..%d",
+                                           n, index.getPostings( frequent.get( frequent.size()-1 )).size(), index.getPostings( frequent.get( 0 )).size(),
+                                           index.getPostings( medium.get( medium.size()-1 )).size(), index.getPostings( medium.get( 0 )).size(),
+                                           index.getPostings( rare.get( rare.size()-1 )).size(), index.getPostings( rare.get( 0 )).size() ));
+
+        // Frequent terms first, as a user would often type them
+        Random random = new Random( 1 );
+        ArrayList<PostingsList[]> two = new ArrayList<PostingsList[]>();
+        ArrayList<PostingsList[]> three = new ArrayList<PostingsList[]>();
+        for ( int i=0; i<numQueries; i++ ) {
+            List<String> second = i % 2 == 0 ? rare : medium;
+            two.add( new PostingsList[] {
+                    index.getPostings( frequent.get( random.nextInt( frequent.size() ))),
+                    index.getPostings( second.get( random.nextInt( second.size() ))) });
+            three.add( new PostingsList[] {
+                    index.getPostings( frequent.get( random.nextInt( frequent.size() ))),
+                    index.getPostings( medium.get( random.nextInt( medium.size() ))),
+                    index.getPostings( rare.get( random.nextInt( rare.size() ))) });
+        }
+
+        Searcher searcher = new Searcher( index, null );
+        String[] names = { "two-term", "three-term" };
+        ArrayList<ArrayList<PostingsList[]>> sets = new ArrayList<ArrayList<PostingsList[]>>();
+        sets.add( two );
+        sets.add( three );
+        for ( int s=0; s<sets.size(); s++ ) {
+            ArrayList<PostingsList[]> queries = sets.get( s );
+            long bestLinear = Long.MAX_VALUE, bestGalloping = Long.MAX_VALUE;
+            long r1 = 0, r2 = 0;
+            for ( int r=0; r<rounds; r++ ) {
+                long start = System.nanoTime();
+                r1 = runLinear( queries );
+                bestLinear = Math.min( bestLinear, System.nanoTime() - start );
+                start = System.nanoTime();
+                r2 = runGalloping( searcher, queries );
+                bestGalloping = Math.min( bestGalloping, System.nanoTime() - start );
+            }
+            if ( r1 != r2 ) {
+                System.err.println( "Results differ: " + r1 + " and " + r2 );
+            }
+            System.err.println( String.format( "%-10s %d queries, %d results: linear %8.2f ms, galloping %8.2f ms, speedup %.1fx",
+                                               names[s], queries.size(), r1, bestLinear / 1e6, bestGalloping / 1e6,
+                                               (double)bestLinear / bestGalloping ));
+        }
+    }
+}
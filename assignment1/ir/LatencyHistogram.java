@@ -0,0 +1,126 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ *  A histogram of latencies, in microseconds, that any number of
+ *  threads can record into without locking.
+ *
+ *  Latencies below 2^SUB_BITS microseconds each have their own bucket.
+ *  Above, every power of two is split into 2^SUB_BITS buckets of equal
+ *  width, so a bucket is never wider than 1/16 of the latencies in it,
+ *  and percentiles are accurate to about 6%. The largest latency is
+ *  kept exactly.
+ */
+public class LatencyHistogram {
+
+    /** log2 of the number of buckets per power of two. */
+    static final int SUB_BITS = 4;
+
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** Enough buckets for latencies up to 2^40 microseconds (12 days). */
+    static final int BUCKETS = (40 - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+
+    /** Records a latency of <code>nanos</code> nanoseconds. */
+    public void record( long nanos ) {
+        long micros = Math.max( 0, nanos / 1000 );
+        counts.incrementAndGet( Math.min( BUCKETS - 1, bucket( micros )));
+        count.increment();
+        totalMicros.add( micros );
+        maxMicros.accumulateAndGet( micros, Math::max );
+    }
+
+
+    /** Returns the bucket of a latency. */
+    static int bucket( long micros ) {
+        if ( micros < SUB_BUCKETS ) {
+            return (int)micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros( micros );
+        int sub = (int)(micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+
+    /** Returns the largest latency that falls in a bucket. */
+    static long upperBound( int bucket ) {
+        if ( bucket < SUB_BUCKETS ) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+
+    /** Number of recorded latencies. */
+    public long count() {
+        return count.sum();
+    }
+
+
+    /** Mean latency in microseconds. */
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double)totalMicros.sum() / n;
+    }
+
+
+    /** Largest latency in microseconds. */
+    public long max() {
+        return maxMicros.get();
+    }
+
+
+    /**
+     *  Returns the latency in microseconds below which a fraction
+     *  <code>p</code> of the recorded latencies fall (the upper bound of
+     *  the bucket of that latency, but never more than the maximum).
+     */
+    public long percentile( double p ) {
+        long n = count.sum();
+        if ( n == 0 ) {
+            return 0;
+        }
+        long rank = Math.max( 1, (long)Math.ceil( p * n ));
+        long seen = 0;
+        for ( int b=0; b<BUCKETS; b++ ) {
+            seen += counts.get( b );
+            if ( seen >= rank ) {
+                return Math.min( upperBound( b ), max() );
+            }
+        }
+        return max();
+    }
+
+
+    /** Returns a one-line summary: count, mean, p50, p95, p99 and max. */
+    public String summary() {
+        return String.format( "count %d, mean %.0f us, p50 %d us, p95 %d us, p99 %d us, max %d us",
+                              count(), mean(), percentile( 0.50 ), percentile( 0.95 ), percentile( 0.99 ), max() );
+    }
+
+
+    /** Returns the summary as a JSON object. */
+    public String toJson() {
+        return String.format( Locale.ROOT,
+                              "{\"count\": %d, \"mean_us\": %.1f, \"p50_us\": %d, \"p95_us\": %d, \"p99_us\": %d, \"max_us\": %d}",
+                              count(), mean(), percentile( 0.50 ), percentile( 0.95 ), percentile( 0.99 ), max() );
+    }
+}
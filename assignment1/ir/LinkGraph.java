@@ -0,0 +1,256 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ *  The link graph of a collection of pages, for HITS ranking.
+ *
+ *  The pages are the nodes 0 .. size()-1, numbered in the order they
+ *  first occur in the links file. The links are stored in compressed
+ *  sparse rows: the pages that node i links to are
+ *  <code>outTargets[outOffsets[i] .. outOffsets[i+1]-1]</code>, in
+ *  increasing order and without duplicates. The transpose, the pages
+ *  that link to node i, is stored the same way in inOffsets and
+ *  inSources.
+ *
+ *  Each node is also joined to the document of the index with the same
+ *  file name as its title, if there is one, in both directions.
+ *
+ *  A graph never changes once it is read, so one graph is shared by
+ *  all queries and any number of threads.
+ */
+public class LinkGraph {
+
+    /** The name of each node in the links file. */
+    private final String[] names;
+
+    /** The title (file name) of each node, or null if it has none. */
+    private final String[] titles;
+
+    /** Forward adjacency: the links of node i start at outOffsets[i]. */
+    final int[] outOffsets;
+
+    /** The targets of the links, row by row. */
+    final int[] outTargets;
+
+    /** Transposed adjacency: the links to node i start at inOffsets[i]. */
+    final int[] inOffsets;
+
+    /** The sources of the links, row by row. */
+    final int[] inSources;
+
+    /** The docID of each node, or -1 if it is not in the index. */
+    private final int[] docIDs;
+
+    /** The node of each docID, or -1 if it has none. */
+    private final int[] nodes;
+
+
+    private LinkGraph( String[] names, String[] titles, int[] outOffsets, int[] outTargets,
+                       int[] inOffsets, int[] inSources, int[] docIDs, int[] nodes ) {
+        this.names = names;
+        this.titles = titles;
+        this.outOffsets = outOffsets;
+        this.outTargets = outTargets;
+        this.inOffsets = inOffsets;
+        this.inSources = inSources;
+        this.docIDs = docIDs;
+        this.nodes = nodes;
+    }
+
+
+    /** Number of nodes. */
+    public int size() {
+        return names.length;
+    }
+
+
+    /** Number of links. */
+    public int links() {
+        return outTargets.length;
+    }
+
+
+    /** Returns the name of <code>node</code> in the links file. */
+    public String name( int node ) {
+        return names[node];
+    }
+
+
+    /** Returns the title of <code>node</code>, or null if it has none. */
+    public String title( int node ) {
+        return titles[node];
+    }
+
+
+    /** Returns the docID of <code>node</code>, or -1 if it is not in the index. */
+    public int docID( int node ) {
+        return docIDs[node];
+    }
+
+
+    /** Returns the node of document <code>docID</code>, or -1 if it is not in the graph. */
+    public int node( int docID ) {
+        return docID >= 0 && docID < nodes.length ? nodes[docID] : -1;
+    }
+
+
+    /**
+     *  Reads a link graph.
+     *
+     *  Each line of the links file is <code>nodeID;outNodeID1,...,outNodeIDK</code>,
+     *  and each line of the titles file is <code>nodeID;title</code>. The
+     *  nodeIDs are not docIDs: nodes are joined to the documents of
+     *  <code>documents</code> (which may be null) by their titles.
+     */
+    public static LinkGraph read( String linksFilename, String titlesFilename, DocumentTable documents ) throws IOException {
+        Builder builder = new Builder();
+        try ( BufferedReader in = new BufferedReader( new InputStreamReader( new FileInputStream( linksFilename ), StandardCharsets.UTF_8 ))) {
+            String line;
+            while ( (line = in.readLine()) != null ) {
+                int semicolon = line.indexOf( ';' );
+                if ( semicolon < 0 ) {
+                    continue;
+                }
+                int source = builder.node( line.substring( 0, semicolon ));
+                int start = semicolon + 1;
+                while ( start < line.length() ) {
+                    int comma = line.indexOf( ',', start );
+                    int end = comma < 0 ? line.length() : comma;
+                    if ( end > start ) {
+                        builder.link( source, builder.node( line.substring( start, end )));
+                    }
+                    start = end + 1;
+                }
+            }
+        }
+        int n = builder.n;
+        String[] names = Arrays.copyOf( builder.names, n );
+
+        int[] outOffsets = new int[n + 1];
+        int[] outTargets = rows( n, builder.from, builder.to, builder.m, outOffsets );
+        int[] inOffsets = new int[n + 1];
+        int[] sources = new int[outTargets.length];
+        for ( int i=0; i<n; i++ ) {
+            Arrays.fill( sources, outOffsets[i], outOffsets[i+1], i );
+        }
+        int[] inSources = rows( n, outTargets, sources, outTargets.length, inOffsets );
+
+        String[] titles = new String[n];
+        try ( BufferedReader in = new BufferedReader( new InputStreamReader( new FileInputStream( titlesFilename ), StandardCharsets.UTF_8 ))) {
+            String line;
+            while ( (line = in.readLine()) != null ) {
+                int semicolon = line.indexOf( ';' );
+                Integer node = semicolon < 0 ? null : builder.nodeNumbers.get( line.substring( 0, semicolon ));
+                if ( node != null ) {
+                    titles[node] = line.substring( semicolon + 1 );
+                }
+            }
+        }
+
+        int[] docIDs = new int[n];
+        Arrays.fill( docIDs, -1 );
+        int[] nodes = new int[documents == null ? 0 : documents.limit()];
+        Arrays.fill( nodes, -1 );
+        if ( documents != null ) {
+            HashMap<String,Integer> titleNodes = new HashMap<String,Integer>();
+            for ( int i=0; i<n; i++ ) {
+                if ( titles[i] != null ) {
+                    titleNodes.put( titles[i], i );
+                }
+            }
+            for ( int docID=0; docID<nodes.length; docID++ ) {
+                if ( documents.contains( docID )) {
+                    Integer node = titleNodes.get( DocumentPriors.fileName( documents.name( docID )));
+                    if ( node != null && docIDs[node] < 0 ) {
+                        nodes[docID] = node;
+                        docIDs[node] = docID;
+                    }
+                }
+            }
+        }
+        return new LinkGraph( names, titles, outOffsets, outTargets, inOffsets, inSources, docIDs, nodes );
+    }
+
+
+    /** Numbers the nodes of the links file, and collects the links. */
+    private static class Builder {
+
+        final HashMap<String,Integer> nodeNumbers = new HashMap<String,Integer>();
+        String[] names = new String[1024];
+        int n = 0;
+        int[] from = new int[4096];
+        int[] to = new int[4096];
+        int m = 0;
+
+        /** Returns the number of the node <code>name</code>, numbering it if it is new. */
+        int node( String name ) {
+            Integer node = nodeNumbers.get( name );
+            if ( node == null ) {
+                if ( n == names.length ) {
+                    names = Arrays.copyOf( names, 2 * n );
+                }
+                node = n;
+                names[n++] = name;
+                nodeNumbers.put( name, node );
+            }
+            return node;
+        }
+
+        /** Adds a link from <code>source</code> to <code>target</code>. */
+        void link( int source, int target ) {
+            if ( m == from.length ) {
+                from = Arrays.copyOf( from, 2 * m );
+                to = Arrays.copyOf( to, 2 * m );
+            }
+            from[m] = source;
+            to[m++] = target;
+        }
+    }
+
+
+    /**
+     *  Sorts the <code>m</code> links <code>from[k] -> to[k]</code> into
+     *  rows by their source (a counting sort), removes duplicate links,
+     *  and returns the targets. The row offsets are stored in
+     *  <code>offsets</code>.
+     */
+    private static int[] rows( int n, int[] from, int[] to, int m, int[] offsets ) {
+        int[] next = new int[n + 1];
+        for ( int k=0; k<m; k++ ) {
+            next[from[k] + 1]++;
+        }
+        for ( int i=0; i<n; i++ ) {
+            next[i + 1] += next[i];
+        }
+        int[] targets = new int[m];
+        for ( int k=0; k<m; k++ ) {
+            targets[next[from[k]]++] = to[k];
+        }
+        // next[i] is now the end of row i; compact the sorted rows
+        int size = 0;
+        int start = 0;
+        for ( int i=0; i<n; i++ ) {
+            int end = next[i];
+            Arrays.sort( targets, start, end );
+            offsets[i] = size;
+            for ( int k=start; k<end; k++ ) {
+                if ( k == start || targets[k] != targets[k - 1] ) {
+                    targets[size++] = targets[k];
+                }
+            }
+            start = end;
+        }
+        offsets[n] = size;
+        return size == m ? targets : Arrays.copyOf( targets, size );
+    }
+}
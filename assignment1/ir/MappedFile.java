@@ -0,0 +1,112 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ *  A read-only file mapped into memory.
+ *
+ *  A single MappedByteBuffer cannot be larger than 2 GB, so the file is
+ *  mapped as a sequence of regions of REGION_SIZE bytes each. Reads
+ *  are served directly from the mapped regions, without any system
+ *  calls. All methods only use absolute positions, so one MappedFile
+ *  can be read by several threads at once.
+ */
+public class MappedFile {
+
+    /** log2 of the size of one mapped region. */
+    static final int REGION_BITS = 30;
+
+    /** The size of one mapped region (1 GB). */
+    static final long REGION_SIZE = 1L << REGION_BITS;
+
+    /** The mapped regions. Region i starts at byte i*REGION_SIZE of the file. */
+    private final MappedByteBuffer[] regions;
+
+    /** The length of the file. */
+    private final long length;
+
+
+    /** Maps the file <code>fileName</code>. */
+    public MappedFile( String fileName ) throws IOException {
+        try ( RandomAccessFile file = new RandomAccessFile( fileName, "r" );
+              FileChannel channel = file.getChannel() ) {
+            length = channel.size();
+            int n = (int)((length + REGION_SIZE - 1) >>> REGION_BITS);
+            regions = new MappedByteBuffer[n];
+            for ( int i=0; i<n; i++ ) {
+                long start = (long)i << REGION_BITS;
+                regions[i] = channel.map( FileChannel.MapMode.READ_ONLY, start, Math.min( REGION_SIZE, length - start ));
+            }
+        }
+    }
+
+
+    /** Returns the length of the file in bytes. */
+    public long length() {
+        return length;
+    }
+
+
+    /** Returns the byte at position <code>pos</code>. */
+    public byte get( long pos ) {
+        return regions[(int)(pos >>> REGION_BITS)].get( (int)(pos & (REGION_SIZE - 1)) );
+    }
+
+
+    /** Returns the int stored (big-endian, as by RandomAccessFile) at position <code>pos</code>. */
+    public int getInt( long pos ) {
+        int offset = (int)(pos & (REGION_SIZE - 1));
+        if ( offset <= REGION_SIZE - 4 ) {
+            return regions[(int)(pos >>> REGION_BITS)].getInt( offset );
+        }
+        int n = 0;
+        for ( int i=0; i<4; i++ ) {
+            n = (n << 8) | (get( pos + i ) & 0xff);
+        }
+        return n;
+    }
+
+
+    /** Returns the long stored (big-endian, as by RandomAccessFile) at position <code>pos</code>. */
+    public long getLong( long pos ) {
+        int offset = (int)(pos & (REGION_SIZE - 1));
+        if ( offset <= REGION_SIZE - 8 ) {
+            return regions[(int)(pos >>> REGION_BITS)].getLong( offset );
+        }
+        long n = 0;
+        for ( int i=0; i<8; i++ ) {
+            n = (n << 8) | (get( pos + i ) & 0xff);
+        }
+        return n;
+    }
+
+
+    /**
+     *  Returns a buffer holding the <code>size</code> bytes starting at
+     *  <code>pos</code>. The buffer is a view of the mapped region,
+     *  unless the bytes span two regions, in which case they are copied.
+     */
+    public ByteBuffer slice( long pos, int size ) {
+        int r = (int)(pos >>> REGION_BITS);
+        int offset = (int)(pos & (REGION_SIZE - 1));
+        if ( offset + (long)size <= regions[r].capacity() ) {
+            ByteBuffer b = regions[r].duplicate();
+            b.limit( offset + size ).position( offset );
+            return b;
+        }
+        byte[] data = new byte[size];
+        for ( int i=0; i<size; i++ ) {
+            data[i] = get( pos + i );
+        }
+        return ByteBuffer.wrap( data );
+    }
+}
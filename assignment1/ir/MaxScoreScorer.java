@@ -0,0 +1,203 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ *  Finds the k documents with the highest tf-idf scores for a ranked
+ *  query, document at a time, with the MaxScore algorithm.
+ *
+ *  Every query term comes with an upper bound on the score it can add
+ *  to a document. The terms are ordered by increasing bound. As soon as
+ *  the k best documents so far all score more than the sum of the
+ *  bounds of the first terms, a document containing only those terms
+ *  cannot get into the top k: these terms are non-essential. Candidate
+ *  documents are then only taken from the postings of the essential
+ *  terms, and the postings of the non-essential terms are galloped over
+ *  (PostingsList.advance) to the candidates, from the largest bound
+ *  down, until the bound of a candidate falls below the k-th score.
+ *
+ *  The score of a document is summed over the terms in query order,
+ *  exactly as Searcher.search_engine_ranked_query sums it, so the top k
+ *  documents and their scores are the same as the first k results of
+ *  the exhaustive search.
+ */
+public class MaxScoreScorer {
+
+    /**
+     *  Relative slack on the bounds, so that rounding errors (which are
+     *  many orders of magnitude smaller) never prune a document that the
+     *  exhaustive search would rank in the top k.
+     */
+    static final double EPSILON = 1e-9;
+
+    /** The index searched. */
+    final Index index;
+
+    /** How scores are normalized by the length of the document. */
+    final NormalizationType normtype;
+
+    /** Euclidean lengths of the documents, for EUCLIDEAN normalization. */
+    final DocColumn euclidian_length;
+
+    /** The postings, idf, weight and score bound of each term, in query order. */
+    final ArrayList<PostingsList> lists = new ArrayList<PostingsList>();
+    double[] idfs = new double[4];
+    double[] weights = new double[4];
+    double[] bounds = new double[4];
+
+
+    public MaxScoreScorer( Index index, NormalizationType normtype, DocColumn euclidian_length ) {
+        this.index = index;
+        this.normtype = normtype;
+        this.euclidian_length = euclidian_length;
+    }
+
+
+    /**
+     *  Adds a query term. <code>bound</code> must be at least the largest
+     *  score the term gives any document.
+     */
+    public void add( PostingsList list, double idf, double weight, double bound ) {
+        int n = lists.size();
+        if ( n == idfs.length ) {
+            idfs = Arrays.copyOf( idfs, 2*n );
+            weights = Arrays.copyOf( weights, 2*n );
+            bounds = Arrays.copyOf( bounds, 2*n );
+        }
+        lists.add( list );
+        idfs[n] = idf;
+        weights[n] = weight;
+        bounds[n] = bound;
+    }
+
+
+    /**
+     *  Returns the k best documents, best first, as a postings list
+     *  with scores.
+     */
+    public PostingsList topK( int k ) {
+        int n = lists.size();
+        TopKHeap heap = new TopKHeap( k );
+        if ( n == 0 || k == 0 ) {
+            return heap.toPostingsList();
+        }
+
+        // The terms by increasing bound, and the sums of the first bounds
+        Integer[] byBound = new Integer[n];
+        for ( int i=0; i<n; i++ ) {
+            byBound[i] = i;
+        }
+        Arrays.sort( byBound, (a, b) -> Double.compare( bounds[a], bounds[b] ));
+        int[] order = new int[n];
+        double[] prefix = new double[n + 1];
+        for ( int j=0; j<n; j++ ) {
+            order[j] = byBound[j];
+            prefix[j+1] = prefix[j] + bounds[order[j]];
+        }
+
+        int[] pos = new int[n];
+        double[] contribution = new double[n];
+        boolean[] hit = new boolean[n];
+        // The terms order[0 .. essential-1] are non-essential.
+        int essential = 0;
+        while ( true ) {
+            double threshold = heap.threshold();
+            while ( essential < n && canSkip( prefix[essential+1], threshold )) {
+                essential++;
+            }
+            if ( essential == n ) {
+                break;
+            }
+
+            // The next candidate is the smallest docID of the essential terms.
+            int doc = Integer.MAX_VALUE;
+            for ( int j=essential; j<n; j++ ) {
+                int c = order[j];
+                if ( pos[c] < lists.get( c ).size() ) {
+                    doc = Math.min( doc, lists.get( c ).docID( pos[c] ));
+                }
+            }
+            if ( doc == Integer.MAX_VALUE ) {
+                break;
+            }
+            double doc_len = docLength( doc );
+
+            double sum = 0;
+            for ( int j=essential; j<n; j++ ) {
+                int c = order[j];
+                PostingsList list = lists.get( c );
+                if ( pos[c] < list.size() && list.docID( pos[c] ) == doc ) {
+                    contribution[c] = list.tf_idf( pos[c], idfs[c], doc_len, weights[c] );
+                    hit[c] = true;
+                    sum += contribution[c];
+                    pos[c]++;
+                }
+            }
+            boolean pruned = false;
+            for ( int j=essential-1; j>=0; j-- ) {
+                if ( canSkip( sum + prefix[j+1], threshold )) {
+                    pruned = true;
+                    break;
+                }
+                int c = order[j];
+                PostingsList list = lists.get( c );
+                pos[c] = list.advance( pos[c], doc );
+                if ( pos[c] < list.size() && list.docID( pos[c] ) == doc ) {
+                    contribution[c] = list.tf_idf( pos[c], idfs[c], doc_len, weights[c] );
+                    hit[c] = true;
+                    sum += contribution[c];
+                }
+            }
+
+            if ( !pruned ) {
+                double score = 0;
+                for ( int c=0; c<n; c++ ) {
+                    if ( hit[c] ) {
+                        score += contribution[c];
+                    }
+                }
+                heap.offer( doc, score );
+            }
+            Arrays.fill( hit, false );
+        }
+        return heap.toPostingsList();
+    }
+
+
+    /**
+     *  Returns true if a document scoring at most <code>bound</code>
+     *  cannot get into the top k. Documents with a score equal to the
+     *  k-th score come later in docID order, so they would rank below.
+     */
+    static boolean canSkip( double bound, double threshold ) {
+        return bound * (1 + EPSILON) <= threshold;
+    }
+
+
+    /** Returns the length scores are normalized by, as in PostingsList.calculate_score. */
+    double docLength( int docID ) {
+        return docLength( index, normtype, euclidian_length, docID );
+    }
+
+
+    /**
+     *  Returns the length the scores of document <code>docID</code> are
+     *  normalized by, as in PostingsList.calculate_score.
+     */
+    static double docLength( Index index, NormalizationType normtype, DocColumn euclidian_length, int docID ) {
+        if ( normtype == NormalizationType.NUMBER_OF_WORDS ) {
+            return index.getDocuments().length( docID );
+        }
+        if ( normtype == NormalizationType.EUCLIDEAN ) {
+            return euclidian_length.get( docID );
+        }
+        return 1;
+    }
+}
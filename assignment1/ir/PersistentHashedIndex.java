@@ -9,7 +9,9 @@ package ir;
 
 import java.io.*;
 import java.util.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.*;
+import java.util.concurrent.atomic.LongAdder;
 
 
 /*
@@ -28,6 +30,12 @@ public class PersistentHashedIndex implements Index {
     /** The directory where the persistent index files are stored. */
     public static final String INDEXDIR = "./index";
 
+    /** The directory of this index, INDEXDIR unless another one is given. */
+    final String indexDir;
+
+    /** True if the index was opened read-only: its files are never written. */
+    final boolean readOnly;
+
     /** The dictionary file name */
     public static final String DICTIONARY_FNAME = "dictionary";
 
@@ -37,86 +45,142 @@ public class PersistentHashedIndex implements Index {
     /** The terms file name */
     public static final String TERMS_FNAME = "terms";
 
-    /** The doc info file name */
+    /** The doc info file name (the text document table of older indexes) */
     public static final String DOCINFO_FNAME = "docInfo";
 
-    /** The dictionary hash table on disk can fit this many entries. */
+    /** The file name of the document table */
+    public static final String DOCUMENTS_FNAME = "documents";
+
+    /** The file name of the euclidean lengths of the documents (see DocColumn) */
+    public static final String NORMS_FNAME = "norms";
+
+    /** The file name of the static scores of the documents (see DocumentPriors) */
+    public static final String PRIORS_FNAME = "priors";
+
+    /** Number of slots of dictionaries written without a header. */
     public static final long TABLESIZE = 611953L;
 
+    /** The first int of a dictionary file written with a header. */
+    static final int DICTIONARY_MAGIC = 0x50484458;
+
+    /**
+     *  Version of the dictionary layout written by DictionaryBuilder,
+     *  stored after the magic number. Dictionaries with a header and
+     *  another version cannot be read.
+     */
+    static final int DICTIONARY_VERSION = 5;
+
+    /**
+     *  Size of the dictionary header: magic, version, number of slots
+     *  (long), number of entries (long), largest distance of an entry
+     *  from its home slot (int), an unused int, number of documents
+     *  (long) and number of tokens (long) of the collection.
+     */
+    static final int HEADER_SIZE = 48;
+
+    /**
+     *  Size of one dictionary entry: pointer, length, hash of the token,
+     *  df, cf, max tf and max tf divided by the document length.
+     */
+    static final int ENTRY_SIZE = 44;
+
+    /**
+     *  Size of an entry in dictionaries written before the header was
+     *  introduced: pointer and length only, starting at byte 0.
+     */
+    static final int LEGACY_ENTRY_SIZE = 12;
+
     /** The dictionary hash table is stored in this file. */
     RandomAccessFile dictionaryFile;
 
     /** The data (the PostingsLists) are stored in this file. */
     RandomAccessFile dataFile;
 
-    /** Pointer to the first free memory cell in the data file. */
-    long free = 0L;
+    /** The dictionary file mapped into memory, or null if the index is not read-only. */
+    MappedFile mappedDictionary;
 
-    HashSet<Long> hashing_used = new HashSet<Long>();
+    /** The data file mapped into memory, or null if the index is not read-only. */
+    MappedFile mappedData;
 
-    /** The cache as a main-memory hash map. */
-    HashMap<String,PostingsList> index = new HashMap<String,PostingsList>();
+    /** Number of bytes written by writeIndex (data file and dictionary). */
+    long bytesWritten = 0;
 
+    /** Time writeIndex took. */
+    long writeNanos = 0;
 
-    // ===================================================================
+    /** Where the first dictionary entry starts (0 for legacy dictionaries). */
+    long dictionaryStart = HEADER_SIZE;
+
+    /** Size of one dictionary entry in the open dictionary. */
+    int entrySize = ENTRY_SIZE;
+
+    /** Version of the open dictionary (0 for dictionaries without a header). */
+    int version = DICTIONARY_VERSION;
+
+    /** Number of slots of the open dictionary. */
+    long tableSize = 0;
+
+    /** Most slots a lookup has to probe in the open dictionary. */
+    long maxProbes = 0;
+
+    /** Number of documents of the collection, from the dictionary header. */
+    long documents = 0;
+
+    /** Number of tokens of the collection, from the dictionary header. */
+    long tokens = 0;
+
+    /** Number of getPostings calls. */
+    LongAdder lookups = new LongAdder();
+
+    /** Number of dictionary entries examined by getPostings. */
+    LongAdder probes = new LongAdder();
+
+    /** Number of bytes read from the data file by getPostings. */
+    LongAdder bytesRead = new LongAdder();
 
     /**
-     *   A helper class representing one entry in the dictionary hashtable.
-     */ 
-    public class EntryDataFile {
-
-        public String token;
-
-        public PostingsList postingsList = new PostingsList();
-
-
-        private PostingsList fromStringtoEntry(String postlist_str){
-            String[] first_posting_list = postlist_str.split("\\*");
-            token = first_posting_list[0];
-            String[] posting_list = first_posting_list[1].split("\n");
-            for(int i=0 ; i < posting_list.length ; i++){
-                String post = posting_list[i];
-                String [] post2 = post.split(":");
-                String docID = post2[0];
-                String[] offset_stringlist = post2[1].split(",");
-                ArrayList<Integer> offsetList = new ArrayList<>();
-                for(int j=0; j<offset_stringlist.length; j++){
-                    String offset_str = offset_stringlist[j];
-                    offsetList.add(Integer.parseInt(offset_str));
-                }
-                PostingsEntry pentry = new PostingsEntry();
-                pentry.docID = Integer.parseInt(docID);
-                pentry.offsetList = offsetList;
-                postingsList.set(pentry);
-            }
+     *  Number of bytes of postings that getPostings did not have to read,
+     *  since the fingerprint showed the entry belonged to another token.
+     */
+    LongAdder bytesSkipped = new LongAdder();
 
-            return postingsList;
-        }
+    /** The names and lengths of the documents. */
+    DocumentTable documentTable = new DocumentTable();
 
-        public String fromEntryoString(){
-            ArrayList<String> final_array = new ArrayList<>();
-            for(int i=0;i<postingsList.size();i++){
-                PostingsEntry postentry = postingsList.get(i);
-                String docID = String.valueOf(postentry.docID);
-                ArrayList<String> offset_array = new ArrayList<>();
-                for(int j=0;j<postentry.offsetList.size();j++){
-                    int offset = postentry.offsetList.get(j);
-                    String offset_s = String.valueOf(offset);
-                    offset_array.add(offset_s);
-                }
-                String offset_string = String.join(",",offset_array);
-                String entry_string = docID +":"+ offset_string;
-                final_array.add(entry_string);
+    /** True if the document table was read from an existing index. */
+    boolean documentsRead = false;
 
-            }
-            String final_string = String.join("\n",final_array);
-            return token + "*" + final_string;
-        }
-    }
+    /** The euclidean lengths of the documents, or null if the index has none. */
+    DocColumn euclideanLengths;
+
+    /** The static scores of the documents, or null if the index has none. */
+    DocColumn priors;
+
+    /** The time it took to open each part of the index. */
+    final PhaseTimer openTimes = new PhaseTimer();
+
+    /** The cache as a main-memory hash map. */
+    HashMap<String,PostingsList> index = new HashMap<String,PostingsList>();
+
+
+    // ===================================================================
 
+    /**
+     *   A helper class representing one entry in the dictionary hashtable.
+     */
     public class Entry{
         private long pointer;
         public int length_entrydata;
+        /** Hash of the token, see hash(). */
+        public long fingerprint;
+        /** Statistics of the term (dictionaries with a header only). */
+        public int df;
+        public long cf;
+        public int maxTf;
+        /** Max tf divided by the document length. */
+        public double maxTfNorm;
+        /** The postings, once they have been read by findEntry. */
+        ByteBuffer data;
         public long getPointer(){
             return pointer;
         }
@@ -133,48 +197,86 @@ public class PersistentHashedIndex implements Index {
      *  If these files don't exist, they will be created. 
      */
     public PersistentHashedIndex() {
+        this( INDEXDIR, false );
+    }
+
+
+    /**
+     *  Constructor. If <code>readOnly</code> is true, the dictionary file
+     *  and the data file of an existing index are mapped into memory and
+     *  all lookups are served from the mappings. Nothing can be inserted
+     *  into a read-only index. Its files are never created or written:
+     *  if they are missing or cannot be mapped, an UncheckedIOException
+     *  is thrown.
+     */
+    public PersistentHashedIndex( boolean readOnly ) {
+        this( INDEXDIR, readOnly );
+    }
+
+
+    /**
+     *  Constructor for an index in the directory <code>indexDir</code>
+     *  instead of INDEXDIR (see PersistentHashedIndex( boolean )).
+     */
+    public PersistentHashedIndex( String indexDir, boolean readOnly ) {
+        this.indexDir = indexDir;
+        this.readOnly = readOnly;
+        String mode = readOnly ? "r" : "rw";
         try {
-            dictionaryFile = new RandomAccessFile( INDEXDIR + "/" + DICTIONARY_FNAME, "rw" );
-            dataFile = new RandomAccessFile( INDEXDIR + "/" + DATA_FNAME, "rw" );
+            dictionaryFile = new RandomAccessFile( indexDir + "/" + DICTIONARY_FNAME, mode );
+            dataFile = new RandomAccessFile( indexDir + "/" + DATA_FNAME, mode );
+            readHeader();
         } catch ( IOException e ) {
+            if ( readOnly ) {
+                throw new UncheckedIOException( "Cannot open the index in " + indexDir, e );
+            }
             e.printStackTrace();
         }
+        openTimes.lap( "header" );
 
         try {
             readDocInfo();
         } catch ( FileNotFoundException e ) {
+            if ( readOnly ) {
+                throw new UncheckedIOException( "The index in " + indexDir + " has no document table", e );
+            }
         } catch ( IOException e ) {
+            if ( readOnly ) {
+                throw new UncheckedIOException( "Cannot read the document table of the index in " + indexDir, e );
+            }
             e.printStackTrace();
         }
-    }
-
-    /**
-     *  Writes data to the data file at a specified place.
-     *
-     *  @return The number of bytes written.
-     */ 
-    int writeData( String dataString, long ptr ) {
-        try {
-            dataFile.seek( ptr ); 
-            byte[] data = dataString.getBytes();
-            dataFile.write( data );
-            return data.length;
-        } catch ( IOException e ) {
-            e.printStackTrace();
-            return -1;
+        openTimes.lap( "documents" );
+        readNorms();
+        openTimes.lap( "norms" );
+        priors = readColumn( PRIORS_FNAME );
+        openTimes.lap( "priors" );
+        if ( readOnly ) {
+            try {
+                mappedDictionary = new MappedFile( indexDir + "/" + DICTIONARY_FNAME );
+                mappedData = new MappedFile( indexDir + "/" + DATA_FNAME );
+            } catch ( IOException e ) {
+                throw new UncheckedIOException( "Cannot map the index in " + indexDir, e );
+            }
+            openTimes.lap( "mapping" );
         }
     }
 
-
     /**
      *  Reads data from the data file
      */ 
-    String readData( long ptr, int size ) {
+    ByteBuffer readData( long ptr, int size ) {
+        if ( mappedData != null ) {
+            return mappedData.slice( ptr, size );
+        }
+        // seek() and read must not be interleaved with those of another thread
         try {
-            dataFile.seek( ptr );
             byte[] data = new byte[size];
-            dataFile.readFully( data );
-            return new String(data);
+            synchronized ( dataFile ) {
+                dataFile.seek( ptr );
+                dataFile.readFully( data );
+            }
+            return ByteBuffer.wrap( data );
         } catch ( IOException e ) {
             e.printStackTrace();
             return null;
@@ -186,39 +288,82 @@ public class PersistentHashedIndex implements Index {
     //
     //  Reading and writing to the dictionary file.
 
-    /*
-     *  Writes an entry to the dictionary hash table file. 
-     *
-     *  @param entry The key of this entry is assumed to have a fixed length
-     *  @param ptr   The place in the dictionary file to store the entry
+    /**
+     *  Finds out the layout of an existing dictionary file. Dictionaries
+     *  without a header are read with the legacy layout. A dictionary
+     *  with a header of another version than DICTIONARY_VERSION is
+     *  rejected with an IOException.
      */
-    void writeEntry( Entry entry, long ptr ) {
-        try {
-            dictionaryFile.seek(ptr);
-            dictionaryFile.writeLong(entry.getPointer());
-            dictionaryFile.seek(ptr+8);
-            dictionaryFile.writeInt(entry.length_entrydata);
+    void readHeader() throws IOException {
+        if ( dictionaryFile.length() < 4 ) {
+            return;
+        }
+        dictionaryFile.seek( 0 );
+        if ( dictionaryFile.readInt() == DICTIONARY_MAGIC ) {
+            int fileVersion = dictionaryFile.readInt();
+            if ( fileVersion != DICTIONARY_VERSION ) {
+                throw new IOException( "The dictionary in " + indexDir + " is version " + fileVersion
+                                       + ", only version " + DICTIONARY_VERSION + " can be read" );
+            }
+            version = fileVersion;
+            tableSize = dictionaryFile.readLong();
+            dictionaryFile.readLong();
+            maxProbes = dictionaryFile.readInt() + 1;
+            dictionaryFile.readInt();
+            documents = dictionaryFile.readLong();
+            tokens = dictionaryFile.readLong();
+            dictionaryStart = HEADER_SIZE;
+            entrySize = ENTRY_SIZE;
+        } else {
+            version = 0;
+            dictionaryStart = 0;
+            entrySize = LEGACY_ENTRY_SIZE;
+            tableSize = TABLESIZE;
+            maxProbes = Long.MAX_VALUE;
         }
-        catch (IOException e){};
     }
 
     /**
-     *  Reads an entry from the dictionary file.
+     *  Reads an entry from the dictionary (from the mapped dictionary,
+     *  if there is one). Past the end of the file, the entry is empty.
+     *  Several threads may read entries at the same time.
      *
      *  @param ptr The place in the dictionary file where to start reading.
      */
     Entry readEntry( long ptr ) {
         Entry en = new Entry();
-        try {
-            dictionaryFile.seek(ptr);
-            long pointer = dictionaryFile.readLong();
-            dictionaryFile.seek(ptr+8);
-            int num_bytes = dictionaryFile.readInt();
-            en.setPointer(pointer);
-            en.length_entrydata = num_bytes;
+        if ( mappedDictionary != null ) {
+            if ( ptr + entrySize <= mappedDictionary.length() ) {
+                en.setPointer( mappedDictionary.getLong( ptr ));
+                en.length_entrydata = mappedDictionary.getInt( ptr + 8 );
+                if ( entrySize == ENTRY_SIZE ) {
+                    en.fingerprint = mappedDictionary.getLong( ptr + 12 );
+                    en.df = mappedDictionary.getInt( ptr + 20 );
+                    en.cf = mappedDictionary.getLong( ptr + 24 );
+                    en.maxTf = mappedDictionary.getInt( ptr + 32 );
+                    en.maxTfNorm = Double.longBitsToDouble( mappedDictionary.getLong( ptr + 36 ));
+                }
+            }
+            return en;
+        }
+        synchronized ( dictionaryFile ) {
+            try {
+                dictionaryFile.seek(ptr);
+                long pointer = dictionaryFile.readLong();
+                int num_bytes = dictionaryFile.readInt();
+                en.setPointer(pointer);
+                en.length_entrydata = num_bytes;
+                if ( entrySize == ENTRY_SIZE ) {
+                    en.fingerprint = dictionaryFile.readLong();
+                    en.df = dictionaryFile.readInt();
+                    en.cf = dictionaryFile.readLong();
+                    en.maxTf = dictionaryFile.readInt();
+                    en.maxTfNorm = dictionaryFile.readDouble();
+                }
 
+            }
+            catch (IOException e){};
         }
-        catch (IOException e){};
         return en;
     }
 
@@ -231,36 +376,44 @@ public class PersistentHashedIndex implements Index {
      * @throws IOException  { exception_description }
      */
     private void writeDocInfo() throws IOException {
-        FileOutputStream fout = new FileOutputStream( INDEXDIR + "/docInfo" );
-        for (Map.Entry<Integer,String> entry : docNames.entrySet()) {
-            Integer key = entry.getKey();
-            String docInfoEntry = key + ";" + entry.getValue() + ";" + docLengths.get(key) + "\n";
-            fout.write(docInfoEntry.getBytes());
-        }
-        fout.close();
+        documentTable.write( indexDir + "/" + DOCUMENTS_FNAME );
     }
 
 
     /**
-     *  Reads the document names and document lengths from file, and
-     *  put them in the appropriate data structures.
+     *  Reads the document names and document lengths from file. Indexes
+     *  written before the binary document table have a text docInfo file
+     *  instead.
      *
      * @throws     IOException  { exception_description }
      */
     private void readDocInfo() throws IOException {
-        System.out.println("DOCINFO");
+        File file = new File( indexDir + "/" + DOCUMENTS_FNAME );
+        if ( file.exists() ) {
+            documentTable = DocumentTable.read( file.getPath() );
+        } else {
+            documentTable = DocumentTable.readText( indexDir + "/" + DOCINFO_FNAME );
+        }
+        documentsRead = true;
+    }
 
-        File file = new File( INDEXDIR + "/docInfo" );
-        FileReader freader = new FileReader(file);
-        try (BufferedReader br = new BufferedReader(freader)) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] data = line.split(";");
-                docNames.put(new Integer(data[0]), data[1]);
-                docLengths.put(new Integer(data[0]), new Integer(data[2]));
-            }
+
+    public DocumentTable getDocuments() {
+        return documentTable;
+    }
+
+
+    /**
+     *  Indexing replaces the index read by the constructor, if any, so
+     *  its documents are dropped before the first token is inserted.
+     */
+    private void startIndexing() {
+        if ( documentsRead ) {
+            documentTable = new DocumentTable();
+            euclideanLengths = null;
+            priors = null;
+            documentsRead = false;
         }
-        freader.close();
     }
 
 
@@ -271,42 +424,41 @@ public class PersistentHashedIndex implements Index {
 
 
     /**
-     *  Write the index to files.
+     *  Write the index to files. The postings are appended to the data
+     *  file through a SequentialWriter, and the dictionary is built in
+     *  memory and written in one pass at the end.
      */
     public void writeIndex() {
-        int collisions = 0;
+        long start = System.nanoTime();
+        DictionaryBuilder dictionary = new DictionaryBuilder();
+        long postingsBytes = 0;
         try {
-            // Write the 'docNames' and 'docLengths' hash maps to a file
+            // Write the document table to a file
             writeDocInfo();
-            // Write the dictionary and the postings list
-            Iterator indexIterator = index.entrySet().iterator();
-            while(indexIterator.hasNext()){
-                Map.Entry<String,PostingsList> element = (Map.Entry)indexIterator.next();
-                EntryDataFile entrydata = new EntryDataFile();
-                entrydata.token = element.getKey();
-                entrydata.postingsList = element.getValue();
-                String serialized = entrydata.fromEntryoString();
-                int readbytes = writeData(serialized,free);
-                if (readbytes != -1) {
-                    Entry e = new Entry();
-                    e.setPointer(free);
-                    e.length_entrydata = readbytes;
-                    free += readbytes + 1;
-                    Long hash = hashCode(entrydata.token);
-                    while(hashing_used.contains(hash)){
-                        hash += 12;
-                        collisions ++;
-                    }
-                    hashing_used.add(hash);
-                    writeEntry(e,hash); //SHOULD be 12
+            // Write the postings lists, and collect the dictionary entries
+            try ( SequentialWriter data = new SequentialWriter( indexDir + "/" + DATA_FNAME )) {
+                for ( Map.Entry<String,PostingsList> element : index.entrySet() ) {
+                    byte[] serialized = PostingsCodec.encode( element.getKey(), element.getValue() );
+                    dictionary.add( element.getKey(), data.position(), serialized.length, TermStats.of( element.getValue(), documentTable ));
+                    data.write( serialized );
                 }
-
+                postingsBytes = data.position();
             }
-
+            documents = documentTable.size();
+            tokens = documentTable.totalLength();
+            dictionary.setCollectionStats( documents, tokens );
+            bytesWritten = postingsBytes + dictionary.write( indexDir + "/" + DICTIONARY_FNAME );
+            version = DICTIONARY_VERSION;
+            dictionaryStart = HEADER_SIZE;
+            entrySize = ENTRY_SIZE;
+            tableSize = dictionary.capacity;
+            maxProbes = dictionary.maxDistance + 1;
         } catch ( IOException e ) {
             e.printStackTrace();
         }
-        System.err.println( collisions + " collisions." );
+        writeNanos = System.nanoTime() - start;
+        dictionary.printStatistics();
+        System.err.println( postingsBytes + " bytes of postings written." );
     }
     public PostingsList getPostingsMemory( String token ) {
         PostingsList post_list;
@@ -322,52 +474,233 @@ public class PersistentHashedIndex implements Index {
      *  if the term is not in the index.
      */
     public PostingsList getPostings( String token ) {
-        long hash = hashCode(token);
-        String token_found = "";
-        String s = "";
-        while(!token.equals(token_found)){
-            Entry e = readEntry(hash);
-            long pointer = e.getPointer();
-            int bytes_data = e.length_entrydata;
-            s = readData(pointer,bytes_data);
-            token_found = fromStringtoToken(s);
-            hash = hash + 12;
+        Entry e = findEntry( token, true );
+        return e == null ? null : PostingsCodec.decode( e.data );
+    }
+
+    /**
+     *  Returns the statistics of a term straight from its dictionary
+     *  entry, without reading the postings, or null if the term is not
+     *  in the index. The entry is recognized by the 64-bit hash of the
+     *  token alone. Dictionaries without a header have no statistics,
+     *  so they are computed from the postings.
+     */
+    public TermStats getTermStats( String token ) {
+        if ( entrySize != ENTRY_SIZE ) {
+            return Index.super.getTermStats( token );
         }
-        EntryDataFile entry = new EntryDataFile();
-        PostingsList plist = entry.fromStringtoEntry(s);
-        return plist;
+        Entry e = findEntry( token, false );
+        return e == null ? null : new TermStats( e.df, e.cf, e.maxTf, e.maxTfNorm );
     }
 
+    /**
+     *  Finds the dictionary entry of a token, or returns null if the
+     *  token is not in the index.
+     *
+     *  Entries whose hash differs from the hash of the token are skipped
+     *  without reading their postings. If <code>verify</code> is true,
+     *  the token stored with the postings is compared with
+     *  <code>token</code> (byte by byte, without decoding anything) and
+     *  the postings are left in the <code>data</code> field of the entry.
+     *  Otherwise, the hash has to be enough.
+     */
+    Entry findEntry( String token, boolean verify ) {
+        lookups.increment();
+        byte[] tokenBytes = verify ? token.getBytes( StandardCharsets.UTF_8 ) : null;
+        long hash = hash( token );
+        long slot = firstSlot( token, hash );
+        for ( long i=0; i<maxProbes; i++ ) {
+            probes.increment();
+            Entry e = readEntry( dictionaryStart + slot*entrySize );
+            int bytes_data = e.length_entrydata;
+            if ( bytes_data == 0 || version != 0 && distance( slot, e.fingerprint ) < i ) {
+                // An empty slot, or an entry closer to its home slot than the token
+                // would be, ends the probe sequence: the token is not in the index.
+                return null;
+            }
+            if ( entrySize == LEGACY_ENTRY_SIZE || e.fingerprint == hash ) {
+                if ( !verify ) {
+                    return e;
+                }
+                ByteBuffer data = readData( e.getPointer(), bytes_data );
+                if ( data == null ) {
+                    return null;
+                }
+                bytesRead.add( bytes_data );
+                if ( PostingsCodec.tokenEquals( data, tokenBytes )) {
+                    e.data = data;
+                    return e;
+                }
+            } else {
+                bytesSkipped.add( bytes_data );
+            }
+            slot = nextSlot( slot );
+        }
+        return null;
+    }
 
-    public String fromStringtoToken(String s){
-        return s.split("\\*")[0];
+    /**
+     *  Prints how many dictionary entries and postings bytes the lookups
+     *  so far have needed.
+     */
+    public void printLookupStatistics() {
+        long n = Math.max( 1, lookups.sum() );
+        System.err.println( String.format( "%d lookups, %.2f probes per lookup, %d bytes read (%.1f per lookup), %d bytes skipped thanks to fingerprints",
+                                           lookups.sum(), (double)probes.sum() / n, bytesRead.sum(),
+                                           (double)bytesRead.sum() / n, bytesSkipped.sum() ));
     }
 
     /**
      *  Inserts this token in the main-memory hashtable.
      */
     public void insert( String token, int docID, int offset ) {
+        if ( readOnly ) {
+            throw new UnsupportedOperationException( "The index was opened read-only" );
+        }
+        startIndexing();
         PostingsList post_list = getPostingsMemory(token);
-        PostingsEntry post_entry = new PostingsEntry();
-        post_entry.docID = docID;
-        post_entry.offsetList.add(offset);
         if (post_list == null){
-            PostingsList p_list = new PostingsList();
-            p_list.set(post_entry);
-            index.put(token,p_list);
+            post_list = new PostingsList();
+            index.put(token,post_list);
+        }
+        post_list.add(docID, offset);
+    }
+
+
+    /**
+     *  Inserts all postings of a token at once.
+     */
+    public void insertPostings( String token, PostingsList postings ) {
+        if ( readOnly ) {
+            throw new UnsupportedOperationException( "The index was opened read-only" );
+        }
+        startIndexing();
+        PostingsList post_list = getPostingsMemory(token);
+        if (post_list == null){
+            index.put(token,postings);
         }else{
-            post_list.set(post_entry);
+            for (int i=0; i<postings.size(); i++){
+                post_list.append(postings, i);
+            }
         }
     }
 
 
 
 
-    private long hashCode(String word) {
+    /**
+     *  Returns the hash of <code>word</code> stored in the entries of the
+     *  open dictionary (legacy entries have none, see findEntry).
+     */
+    long hash(String word) {
+        return hash64(word);
+    }
+
+    /**
+     *  Returns the first slot to probe for <code>word</code>, whose hash is
+     *  <code>hash</code>, in the open dictionary.
+     */
+    long firstSlot(String word, long hash) {
+        if ( version != 0 ) {
+            return hash & (tableSize - 1);
+        }
         long hashed = word.hashCode() & 0xfffffff;
-        return  hashed % TABLESIZE *12;
+        return hashed % tableSize;
+    }
+
+    /** Returns the slot to probe after <code>slot</code>. */
+    long nextSlot(long slot) {
+        return version != 0 ? (slot + 1) & (tableSize - 1) : slot + 1;
+    }
+
+    /**
+     *  Returns how far <code>slot</code> is from the home slot of the entry
+     *  with hash <code>hash</code> (dictionaries with a header only).
+     */
+    long distance(long slot, long hash) {
+        return (slot - hash) & (tableSize - 1);
+    }
+
+    /**
+     *  Returns the 64-bit hash of <code>word</code> used by dictionaries
+     *  with a header: FNV-1a, followed by the finalizer of MurmurHash3 so
+     *  that the low bits, which select the slot, depend on all characters.
+     *  It also serves as fingerprint of the token.
+     */
+    static long hash64(String word) {
+        long h = fingerprint(word);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53a87d3L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     *  Returns a 64-bit fingerprint (FNV-1a) of <code>word</code>. It is
+     *  independent of hashCode(), so tokens whose probe sequences collide
+     *  can almost always be told apart without reading their postings.
+     */
+    static long fingerprint(String word) {
+        long h = 0xcbf29ce484222325L;
+        for ( int i=0; i<word.length(); i++ ) {
+            h ^= word.charAt( i );
+            h *= 0x100000001b3L;
+        }
+        return h;
     }
 
+    /** Maps the euclidean lengths of the documents, if the index has them. */
+    void readNorms() {
+        euclideanLengths = readColumn( NORMS_FNAME );
+    }
+
+
+    /** Maps the column in the file <code>fileName</code> of the index, or returns null if there is none. */
+    DocColumn readColumn( String fileName ) {
+        File file = new File( indexDir + "/" + fileName );
+        if ( file.exists() ) {
+            try {
+                return DocColumn.read( file.getPath() );
+            } catch ( IOException e ) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+
+    /** Returns the euclidean lengths of the documents, or null if the index has none. */
+    public DocColumn euclideanLengths() {
+        return euclideanLengths;
+    }
+
+
+    /** Returns the static scores of the documents, or null if the index has none. */
+    public DocColumn priors() {
+        return priors;
+    }
+
+
+    /**
+     *  Sets the static scores of the documents, and stores them in the
+     *  index, where they are read when the index is opened again. An
+     *  index opened read-only only keeps them in memory.
+     */
+    public void setPriors( DocColumn priors ) {
+        this.priors = priors;
+        if ( readOnly ) {
+            return;
+        }
+        try {
+            priors.write( indexDir + "/" + PRIORS_FNAME );
+        } catch ( IOException e ) {
+            e.printStackTrace();
+        }
+    }
+
+
     /**
      *  Write index to file after indexing is done.
      */
@@ -376,52 +709,63 @@ public class PersistentHashedIndex implements Index {
         System.err.print( "Writing index to disk..." );
         writeIndex();
         System.err.println( "done!" );
-        HashMap<Integer,Double> eucl_dist = calculate_euclidian_distance();
-        write_euclidiandistance(eucl_dist);
-    }
-
-    public HashMap<Integer,Double> calculate_euclidian_distance(){
-        //Dictionary that maps from docID to the sum-square of distances
-        HashMap<Integer,Double> euclidian_distance = new HashMap<Integer,Double>();
-        Iterator indexIterator = index.entrySet().iterator();
-        while(indexIterator.hasNext()){
-            Map.Entry<String,PostingsList> element = (Map.Entry)indexIterator.next();
-            PostingsList p_list = element.getValue();
-            double idf = p_list.calculate_idf2(docNames);
-            for(int i=0; i<p_list.size();i++){
-                PostingsEntry p_entry = p_list.get(i);
-                int tf = p_entry.offsetList.size();
-                double accumulated_distance = 0.0;
-                if(euclidian_distance.containsKey(p_entry.docID)) {
-                    accumulated_distance = euclidian_distance.get(p_entry.docID);
-                }
-                euclidian_distance.put(p_entry.docID,accumulated_distance + Math.pow(idf*tf,2));
-
-            }
-        }
-        HashMap<Integer,Double> root_euclidian_distance = new HashMap<Integer,Double>();
-        Iterator euclidianIterator = euclidian_distance.entrySet().iterator();
-        while(euclidianIterator.hasNext()){
-            Map.Entry<Integer,Double> eucl_element = (Map.Entry)euclidianIterator.next();
-            root_euclidian_distance.put(eucl_element.getKey(),Math.sqrt(eucl_element.getValue()));
+        euclideanLengths = EuclideanLengths.of( index.values(), documentTable.size(), documentTable.limit() );
+        try {
+            euclideanLengths.write( indexDir + "/" + NORMS_FNAME );
+        } catch ( IOException e ) {
+            e.printStackTrace();
         }
-        return root_euclidian_distance;
+        // The priors of a previous index are joined to its docIDs
+        new File( indexDir + "/" + PRIORS_FNAME ).delete();
+        System.err.println( String.format( "Wrote %.1f MB in %.2f s (%.1f MB/s)", bytesWritten / 1048576.0,
+                                           writeNanos / 1e9, bytesWritten / 1048576.0 / (writeNanos / 1e9) ));
     }
 
-    public void write_euclidiandistance(HashMap<Integer,Double> eucl_dist){
-        try {
-            System.out.println("Starting to write euclidian");
-            BufferedWriter writer = new BufferedWriter(new FileWriter("euclidian_distance.txt"));
-            Iterator eucl_dist_iterator = eucl_dist.entrySet().iterator();
-            while(eucl_dist_iterator.hasNext()){
-                Map.Entry<Integer,Double> eucl_element = (Map.Entry)eucl_dist_iterator.next();
-                writer.write(eucl_element.getKey() + ";" + eucl_element.getValue() + "\n");
-            }
-            System.out.println("DONEEEEEEE");
-            writer.close();
-        }catch (IOException ie){}
 
+    /* ----------------------------------------------- */
 
+
+    /**
+     *  Looks up every word of a file in the index in INDEXDIR and prints
+     *  the lookup statistics.
+     *
+     *  Usage: java ir.PersistentHashedIndex [-mm] -f words_file
+     *  (-mm reads the memory-mapped files instead of seeking).
+     */
+    public static void main( String[] args ) throws IOException {
+        boolean mapped = false;
+        String wordsFile = null;
+        for ( int i=0; i<args.length; i++ ) {
+            if ( "-mm".equals( args[i] )) {
+                mapped = true;
+            } else if ( "-f".equals( args[i] ) && i+1 < args.length ) {
+                wordsFile = args[++i];
+            } else {
+                System.err.println( "Unknown option: " + args[i] );
+            }
+        }
+        if ( wordsFile == null ) {
+            System.err.println( "Usage: PersistentHashedIndex [-mm] -f words_file" );
+            return;
+        }
+        PersistentHashedIndex index = new PersistentHashedIndex( mapped );
+        int found = 0, missing = 0;
+        long start = System.nanoTime();
+        try ( BufferedReader in = new BufferedReader( new FileReader( wordsFile ))) {
+            String line;
+            while (( line = in.readLine()) != null ) {
+                StringTokenizer tok = new StringTokenizer( line );
+                while ( tok.hasMoreTokens() ) {
+                    if ( index.getPostings( tok.nextToken() ) != null ) {
+                        found++;
+                    } else {
+                        missing++;
+                    }
+                }
+            }
+        }
+        System.err.println( String.format( "%d words found, %d not found, in %.1f ms", found, missing, (System.nanoTime() - start) / 1e6 ));
+        index.printLookupStatistics();
     }
 
 
@@ -8,21 +8,33 @@
 package ir;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.nio.charset.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 
 /*
- *   Implements an inverted index as a hashtable on disk.
- *
- *   Both the words (the dictionary) and the data (the postings list) are
- *   stored in RandomAccessFiles that permit fast (almost constant-time)
- *   disk seeks.
+ *   Implements an inverted index on disk that can be built from
+ *   collections that do not fit in main memory (single-pass in-memory
+ *   indexing, SPIMI).
  *
  *   When words are read and indexed, they are first put in an ordinary,
- *   main-memory HashMap. When all words are read, the index is committed
- *   to disk.
+ *   main-memory HashMap. Whenever the estimated size of this block
+ *   exceeds the block budget, the block is handed over to a background
+ *   thread and indexing goes on with a new block. The background thread
+ *   sorts the terms of the block and writes it to a run file, in the
+ *   binary format of PostingsCodec. As soon as MERGE_FACTOR runs of the
+ *   same tier exist, it merges them into one run of the next tier, so
+ *   the number of runs stays logarithmic in the size of the collection.
+ *   At most MAX_BLOCKS_IN_FLIGHT blocks wait for the background thread;
+ *   when the limit is reached, insert() waits.
+ *
+ *   At cleanup, the remaining runs are merged in one pass (a k-way merge
+ *   over a heap of run readers) into a data file and a dictionary in the
+ *   format of PersistentHashedIndex.
  */
 public class PersistentScalableHashedIndex implements Index {
 
@@ -30,636 +42,502 @@ public class PersistentScalableHashedIndex implements Index {
     public static final String INDEXDIR = "./index";
 
     /** The dictionary file name */
-    public static final String DICTIONARY_FNAME_FINAL = "dictionaryfinal";
-
     public static final String DICTIONARY_FNAME = "dictionary";
-    /** The dictionary file name */
 
+    /** The data file name */
     public static final String DATA_FNAME = "data";
+
     /** The terms file name */
     public static final String TERMS_FNAME = "terms";
 
     /** The doc info file name */
     public static final String DOCINFO_FNAME = "docInfo";
 
-    /** The dictionary hash table on disk can fit this many entries. */
-    public static final long TABLESIZE = 3499999L;
+    /** The file name of the document table */
+    public static final String DOCUMENTS_FNAME = PersistentHashedIndex.DOCUMENTS_FNAME;
 
-    /** The dictionary hash table is stored in this file. */
-    RandomAccessFile dictionaryFile;
+    /** The file name of the euclidean lengths of the documents */
+    public static final String NORMS_FNAME = PersistentHashedIndex.NORMS_FNAME;
 
+    /** The file name of the static scores of the documents */
+    public static final String PRIORS_FNAME = PersistentHashedIndex.PRIORS_FNAME;
 
-    /** The dictionary hash table is stored in this file. */
-    RandomAccessFile dictionaryFile_final;
+    /** The run files are called run0, run1, ... */
+    public static final String RUN_FNAME = "run";
 
-    /** The data (the PostingsLists) are stored in this file. */
-    RandomAccessFile dataFile;
+    /** Estimated heap size of a new term in the block, besides its characters. */
+    static final int TERM_BYTES = 200;
 
-    /** The data (the PostingsLists) are stored in this file. */
-    RandomAccessFile dataFile_final;
+    /** Estimated heap size of a new document in a postings list. */
+    static final int DOC_BYTES = 24;
 
-    /** Pointer to the first free memory cell in the data file. */
-    long free_final = 0L;
+    /** Estimated heap size of one position in a postings list. */
+    static final int POSITION_BYTES = 8;
 
-    long free = 0L;
+    /** Number of runs of one tier that are merged into a run of the next tier. */
+    static final int MERGE_FACTOR = 8;
 
-    HashSet<Long> hashing_used = new HashSet<Long>();
+    /** Number of full blocks that may wait for the background thread. */
+    static final int MAX_BLOCKS_IN_FLIGHT = 2;
 
+    /**
+     *  The block is written to a run when its estimated size exceeds this
+     *  many bytes. Up to MAX_BLOCKS_IN_FLIGHT + 1 blocks can be in memory.
+     */
+    long blockBudget = Runtime.getRuntime().maxMemory() / 8;
 
-    /** The cache as a main-memory hash map. */
-    TreeMap<String,PostingsList> index = new TreeMap<String,PostingsList>();
+    /** Estimated heap size of the current block. */
+    long blockBytes = 0;
 
-    int MAXIMUM_TOKENS = 200000;
+    /** The current block as a main-memory hash map. */
+    HashMap<String,PostingsList> index = new HashMap<String,PostingsList>();
 
-    int tokens_read = 0;
+    /**
+     *  A run file, and how many times its postings have been merged.
+     */
+    static class Run {
+        final String fileName;
+        final int tier;
 
-    int steps = 0;
+        Run( String fileName, int tier ) {
+            this.fileName = fileName;
+            this.tier = tier;
+        }
+    }
+
+    /**
+     *  The runs written so far. Run i holds smaller docIDs than run i+1.
+     *  Only used by the background thread until cleanup().
+     */
+    ArrayList<Run> runs = new ArrayList<Run>();
+
+    /** Number of run files created so far. */
+    int runsCreated = 0;
 
-    boolean first = true;
-    int pointer_finaldocument = 0;
-    // ===================================================================
+    /** Writes and merges runs. A single thread, so the tasks run in order. */
+    ExecutorService background = Executors.newSingleThreadExecutor();
 
     /**
-     *   A helper class representing one entry in the dictionary hashtable.
+     *  The first error of the background thread, or null. Once a run is
+     *  lost the index is incomplete, so the error is thrown by the next
+     *  submitBlock() and by cleanup(), and no index is written.
      */
-    public class EntryDataFile {
-
-        public String token;
-
-        public PostingsList postingsList = new PostingsList();
-
-
-        private PostingsList fromStringtoEntry(String postlist_str){
-            String[] first_posting_list = postlist_str.split("\\*\\*\\*");
-            token = first_posting_list[0];
-            String[] posting_list = first_posting_list[1].split("-");
-            for(int i=0 ; i < posting_list.length ; i++){
-                String post = posting_list[i];
-                String [] post2 = post.split(":");
-                String docID = post2[0];
-                String[] offset_stringlist = post2[1].split(",");
-                ArrayList<Integer> offsetList = new ArrayList<>();
-                for(int j=0; j<offset_stringlist.length; j++){
-                    String offset_str = offset_stringlist[j];
-                    offsetList.add(Integer.parseInt(offset_str));
-                }
-                PostingsEntry pentry = new PostingsEntry();
-                pentry.docID = Integer.parseInt(docID);
-                pentry.offsetList = offsetList;
-                postingsList.set(pentry);
-            }
+    final AtomicReference<IOException> failure = new AtomicReference<IOException>();
 
-            return postingsList;
-        }
+    /** One permit per block that may wait for the background thread. */
+    Semaphore blocksInFlight = new Semaphore( MAX_BLOCKS_IN_FLIGHT );
 
+    /** When the first token was inserted (System.nanoTime()). */
+    long buildStart = 0;
 
+    /** Time insert() spent waiting for the background thread. */
+    long blockedNanos = 0;
 
-        public String fromEntryoString(){
-            ArrayList<String> final_array = new ArrayList<>();
-            for(int i=0;i<postingsList.size();i++){
-                PostingsEntry postentry = postingsList.get(i);
-                String docID = String.valueOf(postentry.docID);
-                ArrayList<String> offset_array = new ArrayList<>();
-                for(int j=0;j<postentry.offsetList.size();j++){
-                    int offset = postentry.offsetList.get(j);
-                    String offset_s = String.valueOf(offset);
-                    offset_array.add(offset_s);
-                }
-                String offset_string = String.join(",",offset_array);
-                String entry_string = docID +":"+ offset_string;
-                final_array.add(entry_string);
+    /** Time the background thread spent writing and merging runs. */
+    AtomicLong busyNanos = new AtomicLong();
 
-            }
-            String final_string = String.join("-",final_array);
-            return token + "***" + final_string;
-        }
-    }
+    /**
+     *  The names and lengths of the documents, for the term statistics of
+     *  the final merge. Written with the dictionary.
+     */
+    final DocumentTable documentTable = new DocumentTable();
+
+    /** Number of bytes written to run files. */
+    long runBytes = 0;
+
+    /** Number of bytes written to the data file. */
+    long dataBytes = 0;
+
+    /** Number of bytes written to the dictionary file. */
+    long dictionaryBytes = 0;
+
+    /** Reads the index once it has been written by cleanup(). */
+    PersistentHashedIndex reader;
 
-    public class Entry{
-        private long pointer;
-        public int length_entrydata;
-        public long getPointer(){
-            return pointer;
-        }
-        public void setPointer(long p){
-            pointer = p;
-        }
-    }
 
     // ==================================================================
 
 
     /**
-     *  Constructor. Opens the dictionary file and the data file.
-     *  If these files don't exist, they will be created.
+     *  Constructor. The files of an existing index are overwritten by
+     *  cleanup().
      */
     public PersistentScalableHashedIndex() {
-        try {
-            dictionaryFile = new RandomAccessFile( INDEXDIR + "/" + DICTIONARY_FNAME, "rw" );
-            dataFile = new RandomAccessFile( INDEXDIR + "/" + DATA_FNAME, "rw" );
-        } catch ( IOException e ) {
-            e.printStackTrace();
-        }
-
-        try {
-            readDocInfo();
-        } catch ( FileNotFoundException e ) {
-        } catch ( IOException e ) {
-            e.printStackTrace();
-        }
     }
 
+
     /**
-     *  Writes data to the data file at a specified place.
-     *
-     *  @return The number of bytes written.
+     *  Constructor for an index whose blocks are written to disk when
+     *  their estimated size exceeds <code>blockBudget</code> bytes.
      */
-    int writeData(RandomAccessFile dataFi, String dataString, long ptr ) {
-        try {
-            dataFi.seek( ptr+4);
-            byte[] data = dataString.getBytes();
-            dataFi.write(data);
-            dataFi.seek(ptr);
-            dataFi.writeInt(data.length);
-            return data.length + 4;
-        } catch ( IOException e ) {
-            e.printStackTrace();
-            return -1;
-        }
+    public PersistentScalableHashedIndex( long blockBudget ) {
+        this();
+        this.blockBudget = blockBudget;
     }
 
-    int writeData2(RandomAccessFile dataFi, String dataString, long ptr ) {
-        try {
-            dataFi.seek( ptr);
-            byte[] data = dataString.getBytes();
-            dataFi.write(data);
 
-            return data.length;
-        } catch ( IOException e ) {
-            e.printStackTrace();
-            return -1;
-        }
-    }
+    // ==================================================================
 
     /**
-     *  Reads data from the data file
+     *  Inserts this token in the main-memory hashtable, and writes the
+     *  block to a run if it has grown beyond the block budget.
      */
-    String readData(RandomAccessFile file ,long ptr, int size) {
-        try {
-            byte[] data = new byte[size];
-            file.seek(ptr + 4);
-            file.readFully(data);
-            String r = new String(data);
-            return r;
-        } catch ( IOException e ) {
-            e.printStackTrace();
-            return null;
+    public void insert( String token, int docID, int offset ) {
+        if (buildStart == 0) {
+            buildStart = System.nanoTime();
+        }
+        PostingsList post_list = index.get(token);
+        if (post_list == null) {
+            post_list = new PostingsList();
+            index.put(token, post_list);
+            blockBytes += TERM_BYTES + 2*token.length();
+        }
+        int size = post_list.size();
+        post_list.add(docID, offset);
+        blockBytes += POSITION_BYTES;
+        if (post_list.size() > size) {
+            blockBytes += DOC_BYTES;
+        }
+        if (blockBytes > blockBudget) {
+            submitBlock();
         }
     }
 
 
+    /**
+     *  Hands the current block over to the background thread, and starts
+     *  a new block. Waits if MAX_BLOCKS_IN_FLIGHT blocks are already
+     *  waiting.
+     */
+    void submitBlock() {
+        checkFailure();
+        final HashMap<String,PostingsList> block = index;
+        index = new HashMap<String,PostingsList>();
+        blockBytes = 0;
+
+        long start = System.nanoTime();
+        blocksInFlight.acquireUninterruptibly();
+        blockedNanos += System.nanoTime() - start;
+        background.execute( () -> {
+                long t = System.nanoTime();
+                try {
+                    if ( failure.get() == null ) {
+                        writeBlock( block );
+                        mergeTiers();
+                    }
+                } catch ( IOException e ) {
+                    failure.compareAndSet( null, e );
+                } finally {
+                    busyNanos.addAndGet( System.nanoTime() - t );
+                    blocksInFlight.release();
+                }
+            });
+    }
 
-    // ==================================================================
 
     /**
-     *  Writes the document names and document lengths to file.
-     *
-     * @throws IOException  { exception_description }
+     *  Throws the first error of the background thread as an
+     *  UncheckedIOException, if there was one.
      */
-    private void writeDocInfo() throws IOException {
-        FileOutputStream fout = new FileOutputStream( INDEXDIR + "/docInfo" , true);
-        for (Map.Entry<Integer,String> entry : docNames.entrySet()) {
-            Integer key = entry.getKey();
-            String docInfoEntry = key + ";" + entry.getValue() + ";" + docLengths.get(key) + "\n";
-            fout.write(docInfoEntry.getBytes());
+    void checkFailure() {
+        IOException e = failure.get();
+        if ( e != null ) {
+            background.shutdown();
+            throw new UncheckedIOException( "Writing a run failed, the index is incomplete", e );
         }
-        fout.close();
+    }
+
+
+    /** Returns the file name of a new run. */
+    String newRunName() {
+        return INDEXDIR + "/" + RUN_FNAME + (runsCreated++);
     }
 
 
     /**
-     *  Reads the document names and document lengths from file, and
-     *  put them in the appropriate data structures.
-     *
-     * @throws     IOException  { exception_description }
+     *  Writes a block to a new run file, sorted by term. Each entry of the
+     *  run is the length of the entry followed by the token and postings
+     *  as encoded by PostingsCodec.
      */
-    private void readDocInfo() throws IOException {
-        System.out.println("DOCINFO");
-
-        File file = new File( INDEXDIR + "/docInfo" );
-        FileReader freader = new FileReader(file);
-        try (BufferedReader br = new BufferedReader(freader)) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] data = line.split(";");
-                docNames.put(new Integer(data[0]), data[1]);
-                docLengths.put(new Integer(data[0]), new Integer(data[2]));
+    void writeBlock( HashMap<String,PostingsList> block ) throws IOException {
+        String name = newRunName();
+        String[] terms = block.keySet().toArray( new String[0] );
+        Arrays.sort( terms );
+        try ( SequentialWriter out = new SequentialWriter( name )) {
+            for ( String term : terms ) {
+                byte[] data = PostingsCodec.encode( term, block.get( term ));
+                out.writeInt( data.length );
+                out.write( data );
+                runBytes += 4 + data.length;
             }
         }
-        freader.close();
+        runs.add( new Run( name, 0 ));
+        System.err.println( "Wrote " + terms.length + " unique words to " + name );
     }
 
+
     /**
-     *  Write the index to files.
+     *  Merges the last MERGE_FACTOR runs into one run of the next tier as
+     *  long as they all have the same tier. The merged runs are always
+     *  consecutive, so the runs stay in docID order.
      */
-    public void writeIndex(boolean first) {
-        String name = "";
-        if(first){
-            name =  INDEXDIR + "/" + DATA_FNAME + "M" + String.valueOf(steps) ;
-        }else{
-            name =  INDEXDIR + "/" + DATA_FNAME + String.valueOf(steps) ;
-        }
-        try {
-            writeDocInfo();
-            long free2 = 0;
-            RandomAccessFile d =  new RandomAccessFile(name, "rw" );
-            // Write the dictionary and the postings list
-            for(Map.Entry<String,PostingsList> element : index.entrySet()){
-                EntryDataFile entrydata = new EntryDataFile();
-                entrydata.token = element.getKey();
-                entrydata.postingsList = element.getValue();
-                String serialized = entrydata.fromEntryoString();
-                if(serialized.contains(",") && serialized.contains(":")){
-                    int readbytes = writeData(d,serialized,free2); //TESTED AND WELL
-                    if (readbytes < 0) {
-                        continue;
-                    }
-                    free2 = free2 + readbytes + 1;
+    void mergeTiers() throws IOException {
+        while ( runs.size() >= MERGE_FACTOR ) {
+            int first = runs.size() - MERGE_FACTOR;
+            int tier = runs.get( first ).tier;
+            for ( int i=first+1; i<runs.size(); i++ ) {
+                if ( runs.get( i ).tier != tier ) {
+                    return;
                 }
-
-                }
-            d.close();
-
-        } catch ( IOException e ) {
-            e.printStackTrace();
+            }
+            List<Run> inputs = runs.subList( first, runs.size() );
+            String name = newRunName();
+            try ( SequentialWriter out = new SequentialWriter( name )) {
+                mergeRuns( new ArrayList<Run>( inputs ), ( token, entry ) -> {
+                        out.writeInt( entry.length );
+                        out.write( entry );
+                        runBytes += 4 + entry.length;
+                    });
+            }
+            inputs.clear();
+            runs.add( new Run( name, tier + 1 ));
+            System.err.println( "Merged " + MERGE_FACTOR + " runs into " + name );
         }
     }
 
-    public PostingsList getPostingsMemory( String token ) {
-        PostingsList post_list;
-        post_list = index.get(token);
-        return post_list;
-    }
-
-    // ==================================================================
 
-    Entry readEntry( long ptr ) {
-        Entry en = new Entry();
-        try {
-            dictionaryFile.seek(ptr);
-            long pointer = dictionaryFile.readLong();
-            dictionaryFile.seek(ptr+8);
-            int num_bytes = dictionaryFile.readInt();
-            en.setPointer(pointer);
-            en.length_entrydata = num_bytes;
+    /**
+     *  Reads the entries of a run file one by one.
+     */
+    static class RunReader {
 
-        }
-        catch (IOException e){};
-        return en;
-    }
+        /** The number of the run. */
+        final int run;
 
+        final DataInputStream in;
 
+        /** The current entry, as encoded by PostingsCodec. */
+        byte[] entry;
 
+        /** The token of the current entry, or null at the end of the run. */
+        String token;
 
-    String readData2( long ptr, int size ) {
-        try {
-            dataFile.seek( ptr );
-            byte[] data = new byte[size];
-            dataFile.readFully( data );
-            return new String(data);
-        } catch ( IOException e ) {
-            e.printStackTrace();
-            return null;
+        RunReader( String fileName, int run ) throws IOException {
+            this.run = run;
+            in = new DataInputStream( new BufferedInputStream( new FileInputStream( fileName ), 1 << 16 ));
+            next();
         }
-    }
-
 
-    public PostingsList getPostings( String token ) {
-        try{
-            dataFile = new RandomAccessFile( INDEXDIR + "/" + DATA_FNAME, "rw" );
-            RandomAccessFile dictionaryFile = new RandomAccessFile( INDEXDIR + "/" + DICTIONARY_FNAME, "rw" );
-
-            long hash = hashCode2(token);
-            String token_found = "";
-            String s = "";
-            while(!token.equals(token_found)){
-                Entry e = readEntry(hash);
-                long pointer = e.getPointer();
-                int bytes_data = e.length_entrydata;
-                s = readData2(pointer,bytes_data);
-                token_found = fromStringtoToken(s);
-                hash = hash + 12;
+        /** Moves to the next entry. Returns false at the end of the run. */
+        boolean next() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch ( EOFException e ) {
+                token = null;
+                entry = null;
+                return false;
             }
-            EntryDataFile entry = new EntryDataFile();
-            PostingsList plist = entry.fromStringtoEntry(s);
-            return plist;
+            entry = new byte[length];
+            in.readFully( entry );
+            token = PostingsCodec.decodeToken( ByteBuffer.wrap( entry ));
+            return true;
         }
-        catch (IOException ie){return null;}
-    }
 
-    public String fromStringtoToken(String s){
-        return s.split("\\*")[0];
+        void close() throws IOException {
+            in.close();
+        }
     }
 
+
     /**
-     *  Inserts this token in the main-memory hashtable.
+     *  Receives the merged entries, in token order.
      */
-    public void insert( String token, int docID, int offset ) {
-        if(tokens_read<MAXIMUM_TOKENS){
-            PostingsList post_list = getPostingsMemory(token);
-            PostingsEntry post_entry = new PostingsEntry();
-            post_entry.docID = docID;
-            post_entry.offsetList.add(offset);
-            if (post_list == null) {
-                PostingsList p_list = new PostingsList();
-                p_list.set(post_entry);
-                index.put(token, p_list);
-                tokens_read++;
-            } else {
-                post_list.set(post_entry);
-            }
-
-        }
-        else {
-            write_everything();
-            insert(token,docID,offset);
-
-        }
-
+    interface EntryWriter {
+        void write( String token, byte[] entry ) throws IOException;
     }
-    public int writePostingList(RandomAccessFile file,PostingsList p1, String token,long pointer) {
-        EntryDataFile entrydata = new EntryDataFile();
-        entrydata.token = token;
-        entrydata.postingsList = p1;
-        String serialized = entrydata.fromEntryoString();
-        int readbytes = writeData(file,serialized,pointer);
-        return readbytes;
-        }
-    public void merge() {
-        try {
-            int i = 0;
-            long pointer1 = 0; //Pointer to read first file
-            long pointer2 = 0; //Pointer to read second file
-            long pointer3 = 0; //Pointer to write on the third file
-            RandomAccessFile dataM = new RandomAccessFile(INDEXDIR + "/" + DATA_FNAME + "M" + String.valueOf(steps - 1), "rw");
-            RandomAccessFile data = new RandomAccessFile(INDEXDIR + "/" + DATA_FNAME + String.valueOf(steps - 1), "rw");
-            RandomAccessFile dataNext = new RandomAccessFile(INDEXDIR + "/" + DATA_FNAME +"M"+ String.valueOf(steps), "rw");
-            long  l1 = dataM.length();
-            long l2 = data.length();
-
-
-            while (pointer1 < l1 && pointer2 < l2) {
-                i++;
-                //Doc1
-
-                dataM.seek(pointer1);
-                int size10 = dataM.readInt();
-
-                String data_given = readData(dataM,pointer1,size10);
-                int readbytes1 = size10 + 4;
-                String token1 = fromStringtoToken(data_given);
-                EntryDataFile e1 = new EntryDataFile();
-
-                PostingsList p1 = e1.fromStringtoEntry(data_given);
-
-                //Doc2
-                data.seek(pointer2);
-                int size20 = data.readInt();
-                String data2 = readData(data,pointer2,size20);
-                int readbytes2 = size20 + 4;
-                String token2 = fromStringtoToken(data2);
-                EntryDataFile e2 = new EntryDataFile();
-                System.out.println(data2);
-                PostingsList p2 = e2.fromStringtoEntry(data2);
-
-                if (token1.compareTo(token2)==0) {
-                    PostingsList p3 = intersection(p1,p2);
-                    int read = writePostingList(dataNext,p3,token1,pointer3);
-                    pointer3 = pointer3 + read + 1;
-                    pointer1 = pointer1 +readbytes1 + 1;
-                    pointer2 = pointer2 + readbytes2 + 1;
-                }
-                else if (token1.compareTo(token2)<0) {
-                    int read = writePostingList(dataNext,p1,token1,pointer3);
-                    pointer3 = pointer3 + read + 1;
-                    pointer1 = pointer1 + readbytes1 + 1;
-                } else if(token1.compareTo(token2)>0) {
-                    int read = writePostingList(dataNext,p2,token2,pointer3);
-                    pointer3 = pointer3 + read + 1;
-                    pointer2 = pointer2 + readbytes2+ 1;
-                }
-            }
 
-            if (pointer1 < l1) {
-                while(pointer1<l1) {
-                    dataM.seek(pointer1);
-                    int size1 = dataM.readInt();
-                    String data_n = readData(dataM,pointer1,size1);
-                    int readbytes1 = size1 + 4;
-                    pointer1 = pointer1 + readbytes1 + 1;
-                    String token1 = fromStringtoToken(data_n);
-                    EntryDataFile e1 = new EntryDataFile();
-                    PostingsList p1 = e1.fromStringtoEntry(data_n);
-                    int read = writePostingList(dataNext,p1,token1,pointer3);
-                    pointer3 = pointer3 + read + 1;
 
-                }
-            } else if (pointer2 < l2) {
-                while(pointer2<l2) {
-                    data.seek(pointer2);
-                    int size2 = data.readInt();
-                    String data2 = readData(data,pointer2,size2);
-                    int readbytes2 = size2 + 4;
-                    pointer2 = pointer2 + readbytes2 + 1;
-                    String token2 = fromStringtoToken(data2);
-                    EntryDataFile e2 = new EntryDataFile();
-                    PostingsList p2 = e2.fromStringtoEntry(data2);
-                    int read = writePostingList(dataNext,p2,token2,pointer3);
-                    pointer3 = pointer3 + read + 1;
-                }
+    /**
+     *  Merges runs and deletes them. The runs are read sequentially, in
+     *  parallel, and the smallest token of all runs is always on top of
+     *  the heap. The postings of a token found in several runs are
+     *  concatenated in run order, which is docID order.
+     */
+    void mergeRuns( List<Run> runs, EntryWriter out ) throws IOException {
+        PriorityQueue<RunReader> heap = new PriorityQueue<RunReader>( (a, b) -> {
+                int c = a.token.compareTo( b.token );
+                return c != 0 ? c : a.run - b.run;
+            });
+        for ( int i=0; i<runs.size(); i++ ) {
+            RunReader r = new RunReader( runs.get( i ).fileName, i );
+            if ( r.token != null ) {
+                heap.add( r );
+            } else {
+                r.close();
             }
-            dataM.close();
-            data.close();
-            File f1 = new File(INDEXDIR + "/" + DATA_FNAME + "M" + String.valueOf(steps - 1));
-            f1.delete();
-            File f2 = new File(INDEXDIR + "/" + DATA_FNAME  + String.valueOf(steps - 1));
-            f2.delete();
-
         }
-        catch (IOException ex ){}
-    }
 
-    public PostingsList intersection(PostingsList p1, PostingsList p2){
-        PostingsList p3 = new PostingsList();
-        int  l1 = p1.size();
-        int l2 = p2.size();
-        int i1 = 0;
-        int i2 = 0;
-        if (l1>0 && l2>0){
-            while (i1 < l1 && i2 < l2) {
-                PostingsEntry pp1 = p1.get(i1);
-                PostingsEntry pp2 = p2.get(i2);
-                if (pp1.docID == pp2.docID) {
-                    ArrayList<Integer> offsetList1 = pp1.offsetList;
-                    ArrayList<Integer> offsetList2 = pp2.offsetList;
-                    ArrayList<Integer> result = merge_offset(offsetList1,offsetList2);
-                    PostingsEntry postr = new PostingsEntry();
-                    postr.docID = pp1.docID;
-                    postr.offsetList = result;
-                    if(result.size()>0){
-                        p3.set(postr);
+        ArrayList<RunReader> same = new ArrayList<RunReader>();
+        while ( !heap.isEmpty() ) {
+            String token = heap.peek().token;
+            same.clear();
+            while ( !heap.isEmpty() && heap.peek().token.equals( token )) {
+                same.add( heap.poll() );
+            }
+            if ( same.size() == 1 ) {
+                // Only one run has the token: copy its entry as it is.
+                out.write( token, same.get( 0 ).entry );
+            } else {
+                PostingsList merged = new PostingsList();
+                for ( RunReader r : same ) {
+                    PostingsList p = PostingsCodec.decode( ByteBuffer.wrap( r.entry ));
+                    for ( int i=0; i<p.size(); i++ ) {
+                        merged.append( p, i );
                     }
-                    i1 = i1 + 1;
-                    i2 = i2 + 1;
-
-                } else if (pp1.docID < pp2.docID) {
-                    p3.set(pp1);
-                    i1 = i1 + 1;
-                } else {
-                    p3.set(pp2);
-                    i2 = i2 + 1;
                 }
+                out.write( token, PostingsCodec.encode( token, merged ));
             }
-            if (i1 < l1) {
-                p3.getList().addAll(p1.getList().subList(i1, l1));
-            } else if (i2 < l2) {
-                p3.getList().addAll(p2.getList().subList(i2, l2));
-            }
-        }
-        return p3;
-    }
-    public ArrayList<Integer> merge_offset(ArrayList<Integer> offsetList1, ArrayList<Integer> offsetList2){
-        ArrayList<Integer> p3 = new ArrayList<Integer>();
-        int  l1 = offsetList1.size();
-        int l2 = offsetList2.size();
-        int i1 = 0;
-        int i2 = 0;
-        if (l1>0 && l2>0){
-            while (i1 < l1 && i2 < l2) {
-                int num1 = offsetList1.get(i1);
-                int num2 = offsetList2.get(i2);
-                if (num1==num2) {
-                    p3.add(num2);
-                    i1 = i1 + 1;
-                    i2 = i2 + 1;
-
-                } else if (num1 < num2) {
-                    p3.add(num1);
-                    i1 = i1 + 1;
+            for ( RunReader r : same ) {
+                if ( r.next() ) {
+                    heap.add( r );
                 } else {
-                    p3.add(num2);
-                    i2 = i2 + 1;
+                    r.close();
                 }
             }
         }
-        if (i1 < l1) {
-            p3.addAll(offsetList1.subList(i1, l1));
-        } else if (i2 < l2) {
-            p3.addAll(offsetList2.subList(i2, l2));
+        for ( Run run : runs ) {
+            new File( run.fileName ).delete();
         }
-        //System.out.println("offset list found");
-        return p3;
-
+    }
 
 
+    /**
+     *  Merges all remaining runs into the data file and dictionary.
+     */
+    void writeFinal() throws IOException {
+        DictionaryBuilder dictionary = new DictionaryBuilder();
+        EuclideanLengths norms = new EuclideanLengths();
+        final int n = documentTable.size();
+        try ( SequentialWriter data = new SequentialWriter( INDEXDIR + "/" + DATA_FNAME )) {
+            mergeRuns( runs, ( token, entry ) -> {
+                    ByteBuffer buf = ByteBuffer.wrap( entry );
+                    TermStats stats = PostingsCodec.termStats( buf, documentTable::length );
+                    dictionary.add( token, data.position(), entry.length, stats );
+                    data.write( entry );
+                    double idf = stats.idf( n );
+                    PostingsCodec.forEachPosting( buf, ( docID, tf ) -> norms.add( docID, tf, idf ));
+                });
+            dataBytes = data.position();
+        }
+        dictionary.setCollectionStats( n, documentTable.totalLength() );
+        dictionaryBytes = dictionary.write( INDEXDIR + "/" + DICTIONARY_FNAME );
+        norms.toColumn( documentTable.limit() ).write( INDEXDIR + "/" + NORMS_FNAME );
+        documentTable.write( INDEXDIR + "/" + DOCUMENTS_FNAME );
+        // The priors of a previous index are joined to its docIDs
+        new File( INDEXDIR + "/" + PRIORS_FNAME ).delete();
+        runs.clear();
+        System.err.println( "done!" );
+        dictionary.printStatistics();
     }
 
 
     /**
-     *  Write index to file after indexing is done.
+     *  Returns the postings for a specific term, or null if the term is
+     *  not in the index. Only works once the index has been written.
      */
-    public void write_everything(){
-        if(first){
-            writeIndex(first);
-            first = false;
-            System.err.println( index.size() + " unique words" );
-            System.err.print( "Writing index to disk..." );
-            System.err.println( "done!" );
-            docLengths.clear();
-            docNames.clear();
-            index.clear();
-            tokens_read = 0;
-
-        }else{
-            writeIndex(first);
-            docLengths.clear();
-            docNames.clear();
-            index.clear();
-            tokens_read = 0;
-            steps ++;
-            //Merge both files
-            merge();
-            System.out.println("Merged");
+    public PostingsList getPostings( String token ) {
+        if ( reader == null ) {
+            return null;
         }
+        return reader.getPostings( token );
+    }
 
 
-
+    /**
+     *  Returns the statistics of a term, or null if the term is not in
+     *  the index. Only works once the index has been written.
+     */
+    public TermStats getTermStats( String token ) {
+        if ( reader == null ) {
+            return null;
+        }
+        return reader.getTermStats( token );
     }
-    public void writeFinal(){
-        int pointer = 0; //Pointer of the first file
-        int pointer_f = 0; //Pointer of the FINAL file
-        try {
-            System.out.println(INDEXDIR + "/" + DATA_FNAME +"M"+ String.valueOf(steps));
-            RandomAccessFile dataNext = new RandomAccessFile(INDEXDIR + "/" + DATA_FNAME +"M"+ String.valueOf(steps), "rw");
-
-            long l1 = dataNext.length();
-            while(pointer<l1){
-                dataNext.seek(pointer);
-                int size = dataNext.readInt();
-                String data_n = readData(dataNext,pointer,size);
-                int readbytes1 = size + 4;
-                pointer = pointer + readbytes1 + 1;
-
-                EntryDataFile entry = new EntryDataFile();
-                PostingsList p1 = entry.fromStringtoEntry(data_n);
-                String token = entry.token;
-
-
-                int written = writeData2(dataFile,data_n,pointer_f);
-                long hashed = hashCode2(token);
-
-                Entry e_dict = new Entry();
-                e_dict.pointer = pointer_f;
-                e_dict.length_entrydata = written;
-                while(hashing_used.contains(hashed)){
-                    hashed +=12;
-                }
-                writeEntry(e_dict,hashed);
-                hashing_used.add(hashed);
-                pointer_f = pointer_f + written + 1;
-            }
 
-        }catch(IOException ie){}
 
+    public DocumentTable getDocuments() {
+        return documentTable;
+    }
 
 
+    /**
+     *  Returns the euclidean lengths of the documents, or null until the
+     *  index has been written.
+     */
+    public DocColumn euclideanLengths() {
+        return reader == null ? null : reader.euclideanLengths();
     }
-    public void cleanup() {
-        writeIndex(first);
-        steps ++;
-        docLengths.clear();
-        docNames.clear();
-        index.clear();
-        tokens_read = 0;
-        System.out.println("BEFORE MERGE");
-        merge();
-        System.out.println("AFTER MERGE");
-        writeFinal();
 
 
+    /**
+     *  Returns the static scores of the documents, or null until they
+     *  have been set.
+     */
+    public DocColumn priors() {
+        return reader == null ? null : reader.priors();
     }
-    public long hashCode2(String word) {
-        long hashed = word.hashCode() & 0xfffffff;
-        return  hashed % TABLESIZE *12;
+
+
+    /** Sets and stores the static scores of the documents of the written index. */
+    public void setPriors( DocColumn priors ) {
+        if ( reader == null ) {
+            throw new IllegalStateException( "The index has not been written yet" );
+        }
+        reader.setPriors( priors );
     }
-    void writeEntry( Entry entry, long ptr ) {
+
+
+    /**
+     *  Writes the last block, waits for the background thread and merges
+     *  all runs into the final index. Throws an UncheckedIOException if
+     *  a run or the final index could not be written.
+     */
+    public void cleanup() {
+        long cleanupStart = System.nanoTime();
+        if ( buildStart == 0 ) {
+            buildStart = cleanupStart;
+        }
+        // Background work done so far, less the time indexing waited for it.
+        long overlapped = Math.max( 0, busyNanos.get() - blockedNanos );
+        if ( !index.isEmpty() ) {
+            submitBlock();
+        }
+        background.shutdown();
+        try {
+            background.awaitTermination( Long.MAX_VALUE, TimeUnit.NANOSECONDS );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        checkFailure();
+        long waited = System.nanoTime() - cleanupStart;
+        System.err.print( "Merging " + runs.size() + " runs..." );
         try {
-            dictionaryFile.seek(ptr);
-            dictionaryFile.writeLong(entry.getPointer());
-            dictionaryFile.seek(ptr+8);
-            dictionaryFile.writeInt(entry.length_entrydata);
+            writeFinal();
+        } catch ( IOException e ) {
+            throw new UncheckedIOException( "Merging the runs failed, the index is incomplete", e );
         }
-        catch (IOException e){};
+        long end = System.nanoTime();
+        long bytesWritten = runBytes + dataBytes + dictionaryBytes;
+        long writeNanos = busyNanos.get() + (end - cleanupStart - waited);
+        System.err.println( String.format( "%d bytes written: %d to runs, %d to the data file, %d to the dictionary (%.1f MB/s)",
+                                           bytesWritten, runBytes, dataBytes, dictionaryBytes,
+                                           bytesWritten / 1048576.0 / (writeNanos / 1e9) ));
+        System.err.println( String.format( "Build took %.1f s. Background writes and merges took %.1f s, %.1f s of which overlapped with indexing. "
+                                           + "Indexing waited %.1f s for the background thread, cleanup waited %.1f s and the final merge took %.1f s.",
+                                           (end - buildStart) / 1e9, busyNanos.get() / 1e9, overlapped / 1e9,
+                                           blockedNanos / 1e9, waited / 1e9, (end - cleanupStart - waited) / 1e9 ));
+        reader = new PersistentHashedIndex( true );
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,41 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+
+/**
+ *  Measures the time of consecutive phases, such as the phases of
+ *  starting the engine, for a one-line breakdown:
+ *  <code>123.4 ms: index 80.1 ms, pageranks 40.0 ms, searcher 3.3 ms</code>.
+ */
+class PhaseTimer {
+
+    /** When the timer was created. */
+    private final long start = System.nanoTime();
+
+    /** When the last phase ended. */
+    private long last = start;
+
+    /** The phases so far. */
+    private final StringBuilder phases = new StringBuilder();
+
+
+    /** Ends the current phase, which started when the previous one ended. */
+    void lap( String phase ) {
+        long now = System.nanoTime();
+        if ( phases.length() > 0 ) {
+            phases.append( ", " );
+        }
+        phases.append( String.format( "%s %.1f ms", phase, (now - last) / 1e6 ));
+        last = now;
+    }
+
+
+    /** Returns the total time and the time of each phase. */
+    public String toString() {
+        return String.format( "%.1f ms: %s", (last - start) / 1e6, phases );
+    }
+}
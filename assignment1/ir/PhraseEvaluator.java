@@ -0,0 +1,284 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ *  Evaluates phrase queries: finds the documents where the terms of a
+ *  phrase occur in order, next to each other or, with a slop, with at
+ *  most <code>slop</code> other words in between in total. The phrase
+ *  <code>"a b"~3</code> matches "a b", "a x b" and "a x y z b", but
+ *  not "b a".
+ *
+ *  All terms are matched in one pass, instead of intersecting them two
+ *  at a time. The documents are aligned by leapfrogging: each term in
+ *  turn, rarest first, skips ahead (see PostingsList.advance) to the
+ *  largest docID seen so far, until all terms are on the same document.
+ *
+ *  In a document where all terms occur, the positions of the terms are
+ *  read relative to each occurrence of the first term: every next term
+ *  takes its first occurrence after the previous term. This is the
+ *  shortest match that starts there, so the document matches if one of
+ *  them has no more than <code>slop</code> words in between. Each term
+ *  only moves forward through its positions, and the search for one
+ *  start stops as soon as the gap is too large.
+ *
+ *  A term may have several postings lists (the words a wildcard term
+ *  expands to). Their positions are merged one document at a time into
+ *  a buffer that is reused, so nothing is allocated per document
+ *  except the result.
+ *
+ *  An evaluator is used for one query only.
+ */
+public class PhraseEvaluator {
+
+    /** docID of a cursor that has no more documents. */
+    static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /** The terms, in the order of the phrase. */
+    final TermCursor[] terms;
+
+    /** The terms, rarest first, for aligning the documents. */
+    final TermCursor[] byFrequency;
+
+    /** Number of other words allowed in between the terms. */
+    final int slop;
+
+    /** For each term, the first of its positions that may still be part of a match. */
+    final int[] next;
+
+
+    /**
+     *  The postings of one term of the phrase, read one document at a
+     *  time.
+     */
+    static class TermCursor {
+
+        /** The postings lists of the words of this term. */
+        final PostingsList[] lists;
+
+        /** The current posting in each list. */
+        final int[] index;
+
+        /** Total number of postings, to order the terms. */
+        final long cost;
+
+        /** The current document, or NO_MORE_DOCS. */
+        int docID;
+
+        /** The positions in the current document, when there are several lists. */
+        int[] buffer = new int[16];
+
+        /** Number of positions in the current document. */
+        int count;
+
+        TermCursor( PostingsList[] lists ) {
+            this.lists = lists;
+            this.index = new int[lists.length];
+            long cost = 0;
+            for ( PostingsList list : lists ) {
+                cost += list.size();
+            }
+            this.cost = cost;
+            updateDocID();
+        }
+
+        /** Moves to the first document at or after <code>target</code>, and returns it. */
+        int advance( int target ) {
+            if ( docID < target ) {
+                for ( int l=0; l<lists.length; l++ ) {
+                    index[l] = lists[l].advance( index[l], target );
+                }
+                updateDocID();
+            }
+            return docID;
+        }
+
+        private void updateDocID() {
+            docID = NO_MORE_DOCS;
+            for ( int l=0; l<lists.length; l++ ) {
+                if ( index[l] < lists[l].size() ) {
+                    docID = Math.min( docID, lists[l].docID( index[l] ));
+                }
+            }
+        }
+
+        /** Reads the positions of the current document. */
+        void loadPositions() {
+            if ( lists.length == 1 ) {
+                count = lists[0].tf( index[0] );
+                return;
+            }
+            count = 0;
+            int sources = 0;
+            for ( int l=0; l<lists.length; l++ ) {
+                PostingsList list = lists[l];
+                int i = index[l];
+                if ( i < list.size() && list.docID( i ) == docID ) {
+                    int tf = list.tf( i );
+                    if ( count + tf > buffer.length ) {
+                        buffer = Arrays.copyOf( buffer, Math.max( 2 * buffer.length, count + tf ));
+                    }
+                    for ( int j=0; j<tf; j++ ) {
+                        buffer[count++] = list.position( i, j );
+                    }
+                    sources++;
+                }
+            }
+            if ( sources > 1 ) {
+                // Different words never have the same position
+                Arrays.sort( buffer, 0, count );
+            }
+        }
+
+        /** Returns the jth position in the current document. */
+        int position( int j ) {
+            return lists.length == 1 ? lists[0].position( index[0], j ) : buffer[j];
+        }
+    }
+
+
+    /**
+     *  Creates an evaluator for a phrase. Every element of
+     *  <code>terms</code> holds the postings lists of the words of one
+     *  term, at least one.
+     */
+    public PhraseEvaluator( ArrayList<PostingsList[]> terms, int slop ) {
+        this.terms = new TermCursor[terms.size()];
+        for ( int i=0; i<this.terms.length; i++ ) {
+            this.terms[i] = new TermCursor( terms.get( i ));
+        }
+        this.byFrequency = this.terms.clone();
+        Arrays.sort( byFrequency, (a, b) -> Long.compare( a.cost, b.cost ));
+        this.slop = slop;
+        this.next = new int[this.terms.length];
+    }
+
+
+    /**
+     *  Returns the first <code>maxDocs</code> matching documents, in
+     *  docID order. If <code>allPositions</code> is true, each document
+     *  has the position of the last term of every match; otherwise the
+     *  search in a document stops at its first match, which is the only
+     *  position of the document.
+     */
+    public PostingsList evaluate( int maxDocs, boolean allPositions ) {
+        PostingsList result = new PostingsList();
+        if ( terms.length == 0 ) {
+            return result;
+        }
+        int target = 0;
+        while ( result.size() < maxDocs ) {
+            int docID = align( target );
+            if ( docID == NO_MORE_DOCS ) {
+                break;
+            }
+            matchDocument( docID, allPositions, result );
+            target = docID + 1;
+        }
+        return result;
+    }
+
+
+    /**
+     *  Moves all terms to the first document at or after
+     *  <code>target</code> in which they all occur, and returns it.
+     */
+    private int align( int target ) {
+        int agreed = 0;
+        for ( int i=0; agreed < byFrequency.length; i = (i + 1) % byFrequency.length ) {
+            int docID = byFrequency[i].advance( target );
+            if ( docID == NO_MORE_DOCS ) {
+                return NO_MORE_DOCS;
+            }
+            if ( docID == target ) {
+                agreed++;
+            } else {
+                target = docID;
+                agreed = 1;
+            }
+        }
+        return target;
+    }
+
+
+    /** Adds document <code>docID</code> to the result if the phrase occurs in it. */
+    private void matchDocument( int docID, boolean allPositions, PostingsList result ) {
+        int n = terms.length;
+        for ( int i=0; i<n; i++ ) {
+            terms[i].loadPositions();
+            next[i] = 0;
+        }
+        TermCursor first = terms[0];
+        int lastEnd = -1;
+        for ( int s=0; s<first.count; s++ ) {
+            int start = first.position( s );
+            int previous = start;
+            int i = 1;
+            for ( ; i<n; i++ ) {
+                TermCursor term = terms[i];
+                int j = next[i];
+                while ( j < term.count && term.position( j ) <= previous ) {
+                    j++;
+                }
+                next[i] = j;
+                if ( j == term.count ) {
+                    // No later start can match either
+                    return;
+                }
+                previous = term.position( j );
+                if ( previous - start - i > slop ) {
+                    break;
+                }
+            }
+            if ( i == n && previous > lastEnd ) {
+                result.add( docID, previous );
+                lastEnd = previous;
+                if ( !allPositions ) {
+                    return;
+                }
+            }
+        }
+    }
+
+
+    /**
+     *  Removes the quotes around a phrase, <code>"a b"</code> or
+     *  <code>"a b"~3</code>, from its words, and returns the slop (0 if
+     *  there is none). Words that are left empty are removed.
+     */
+    public static int parseSlop( ArrayList<String> words ) {
+        int slop = 0;
+        if ( words.isEmpty() ) {
+            return slop;
+        }
+        String first = words.get( 0 );
+        if ( first.startsWith( "\"" )) {
+            words.set( 0, first.substring( 1 ));
+        }
+        int last = words.size() - 1;
+        String word = words.get( last );
+        int quote = word.lastIndexOf( '"' );
+        if ( quote >= 0 ) {
+            String rest = word.substring( quote + 1 );
+            if ( rest.startsWith( "~" )) {
+                try {
+                    slop = Math.max( 0, Integer.parseInt( rest.substring( 1 )));
+                } catch ( NumberFormatException e ) {
+                    throw new IllegalArgumentException( "bad slop: " + rest );
+                }
+            } else if ( !rest.isEmpty() ) {
+                return slop;
+            }
+            words.set( last, word.substring( 0, quote ));
+        }
+        words.removeIf( String::isEmpty );
+        return slop;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+
+/**
+ *  Compares the heap footprint and insertion throughput of the compact
+ *  PostingsList with the boxed representation it replaced (an
+ *  ArrayList of PostingsEntry objects, each with an ArrayList of
+ *  Integer offsets).
+ *
+ *  The corpus is tokenized once into an array of term ids, so both
+ *  representations are built from exactly the same token stream and
+ *  the timings do not include tokenization.
+ *
+ *  Usage: java -cp classes -Xmx4g ir.PostingsBenchmark -d dir [-p patterns_file] [-r rounds]
+ */
+public class PostingsBenchmark {
+
+    /** Distinct terms of the corpus, indexed by term id. */
+    ArrayList<String> terms = new ArrayList<String>();
+
+    /** Term ids of all tokens of the corpus, in reading order. */
+    int[] tokens = new int[1 << 16];
+
+    /** Number of tokens read. */
+    int numTokens = 0;
+
+    /** docStart[d] is the index in tokens of the first token of document d. */
+    ArrayList<Integer> docStart = new ArrayList<Integer>();
+
+
+    /** Tokenizes all files below <code>f</code>. */
+    void readCorpus( File f, String patterns_file, HashMap<String,Integer> termIDs ) throws IOException {
+        if ( !f.canRead() ) {
+            return;
+        }
+        if ( f.isDirectory() ) {
+            String[] fs = f.list();
+            if ( fs != null ) {
+                for ( int i=0; i<fs.length; i++ ) {
+                    readCorpus( new File( f, fs[i] ), patterns_file, termIDs );
+                }
+            }
+            return;
+        }
+        docStart.add( numTokens );
+        Reader reader = new InputStreamReader( new FileInputStream(f), StandardCharsets.UTF_8 );
+        Tokenizer tok = new Tokenizer( reader, true, false, true, patterns_file );
+        while ( tok.hasMoreTokens() ) {
+            String token = tok.nextToken();
+            Integer id = termIDs.get( token );
+            if ( id == null ) {
+                id = terms.size();
+                termIDs.put( token, id );
+                terms.add( token );
+            }
+            if ( numTokens == tokens.length ) {
+                tokens = Arrays.copyOf( tokens, tokens.length * 2 );
+            }
+            tokens[numTokens++] = id;
+        }
+        reader.close();
+    }
+
+
+    /** Builds the index with the compact representation. */
+    HashedIndex buildCompact() {
+        HashedIndex index = new HashedIndex();
+        int docs = docStart.size();
+        for ( int d=0; d<docs; d++ ) {
+            int start = docStart.get( d );
+            int end = d+1 < docs ? docStart.get( d+1 ) : numTokens;
+            for ( int t=start; t<end; t++ ) {
+                index.insert( terms.get( tokens[t] ), d, t-start );
+            }
+        }
+        index.cleanup();
+        return index;
+    }
+
+
+    /** Builds the index with the boxed representation used before. */
+    HashMap<String,ArrayList<PostingsEntry>> buildBoxed() {
+        HashMap<String,ArrayList<PostingsEntry>> index = new HashMap<String,ArrayList<PostingsEntry>>();
+        int docs = docStart.size();
+        for ( int d=0; d<docs; d++ ) {
+            int start = docStart.get( d );
+            int end = d+1 < docs ? docStart.get( d+1 ) : numTokens;
+            for ( int t=start; t<end; t++ ) {
+                String token = terms.get( tokens[t] );
+                ArrayList<PostingsEntry> list = index.get( token );
+                if ( list == null ) {
+                    list = new ArrayList<PostingsEntry>();
+                    index.put( token, list );
+                }
+                if ( list.size() == 0 || list.get( list.size()-1 ).docID != d ) {
+                    PostingsEntry entry = new PostingsEntry();
+                    entry.docID = d;
+                    list.add( entry );
+                }
+                list.get( list.size()-1 ).offsetList.add( t-start );
+            }
+        }
+        return index;
+    }
+
+
+    /** Returns the used heap after a few rounds of garbage collection. */
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for ( int i=0; i<5; i++ ) {
+            System.gc();
+            try {
+                Thread.sleep( 50 );
+            } catch ( InterruptedException e ) {
+            }
+            used = Math.min( used, rt.totalMemory() - rt.freeMemory() );
+        }
+        return used;
+    }
+
+
+    void report( String name, long heap, long[] nanos ) {
+        Arrays.sort( nanos );
+        double best = nanos[0] / 1e9;
+        System.err.println( String.format( "%-8s heap %8.1f MB   build %7.3f s (best of %d)   %6.2f M tokens/s",
+                                           name, heap / 1048576.0, best, nanos.length, numTokens / best / 1e6 ));
+    }
+
+
+    public static void main( String[] args ) throws IOException {
+        String dir = null;
+        String patterns_file = null;
+        int rounds = 3;
+        for ( int i=0; i<args.length; i++ ) {
+            if ( "-d".equals( args[i] ) && i+1 < args.length ) {
+                dir = args[++i];
+            } else if ( "-p".equals( args[i] ) && i+1 < args.length ) {
+                patterns_file = args[++i];
+            } else if ( "-r".equals( args[i] ) && i+1 < args.length ) {
+                rounds = Integer.parseInt( args[++i] );
+            } else {
+                System.err.println( "Unknown option: " + args[i] );
+            }
+        }
+        if ( dir == null ) {
+            System.err.println( "Usage: PostingsBenchmark -d dir [-p patterns_file] [-r rounds]" );
+            return;
+        }
+
+        PostingsBenchmark b = new PostingsBenchmark();
+        b.readCorpus( new File( dir ), patterns_file, new HashMap<String,Integer>() );
+        System.err.println( b.docStart.size() + " documents, " + b.numTokens + " tokens, " + b.terms.size() + " unique words" );
+
+        // Boxed representation
+        long[] nanos = new long[rounds];
+        for ( int r=0; r<rounds; r++ ) {
+            long start = System.nanoTime();
+            b.buildBoxed();
+            nanos[r] = System.nanoTime() - start;
+        }
+        long base = usedHeap();
+        HashMap<String,ArrayList<PostingsEntry>> boxed = b.buildBoxed();
+        long boxedHeap = usedHeap() - base;
+        b.report( "boxed", boxedHeap, nanos );
+        System.err.println( boxed.size() + " postings lists" );
+        boxed = null;
+
+        // Compact representation
+        nanos = new long[rounds];
+        for ( int r=0; r<rounds; r++ ) {
+            long start = System.nanoTime();
+            b.buildCompact();
+            nanos[r] = System.nanoTime() - start;
+        }
+        base = usedHeap();
+        HashedIndex compact = b.buildCompact();
+        long compactHeap = usedHeap() - base;
+        b.report( "compact", compactHeap, nanos );
+
+        System.err.println( String.format( "compact/boxed heap ratio: %.2f", (double)compactHeap / boxedHeap ));
+        // Keep the index reachable until the measurement is done.
+        System.err.println( compact.getPostings( b.terms.get( 0 )).size() + " postings for '" + b.terms.get( 0 ) + "'" );
+    }
+}
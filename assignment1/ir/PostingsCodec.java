@@ -0,0 +1,298 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+
+/**
+ *  Serializes postings lists for the data file of a persistent index.
+ *
+ *  A binary entry looks like this (all numbers are variable-byte
+ *  encoded, seven bits per byte, high bit set on the last byte):
+ *
+ *     VERSION  tokenLength  token(UTF-8)  df
+ *     docGap  tf  posGap ... posGap        (df times)
+ *
+ *  docGaps are the differences between consecutive docIDs (the first
+ *  one is the docID itself) and posGaps are the differences between
+ *  consecutive positions within one document.
+ *
+ *  Entries written by older versions are text of the form
+ *  <code>token*docID:pos,pos\ndocID:pos,...</code>. They never start
+ *  with the VERSION byte, so both kinds can be told apart and the old
+ *  text format stays readable.
+ */
+public class PostingsCodec {
+
+    /** The first byte of every binary entry. */
+    public static final byte VERSION = 1;
+
+
+    // ==================================================================
+    //
+    //  Binary format
+
+    /**
+     *  Encodes the token and its postings list.
+     */
+    public static byte[] encode( String token, PostingsList list ) {
+        byte[] tokenBytes = token.getBytes( StandardCharsets.UTF_8 );
+        // Most gaps fit in one or two bytes, so this is usually enough.
+        byte[] out = new byte[16 + tokenBytes.length + 3*list.size()];
+        int p = 0;
+        out[p++] = VERSION;
+        p = writeVByte( out, p, tokenBytes.length );
+        System.arraycopy( tokenBytes, 0, out, p, tokenBytes.length );
+        p += tokenBytes.length;
+        p = writeVByte( out, p, list.size() );
+        int lastDoc = 0;
+        for ( int i=0; i<list.size(); i++ ) {
+            int tf = list.tf( i );
+            if ( p + 10 + 5*tf > out.length ) {
+                out = Arrays.copyOf( out, Math.max( 2*out.length, p + 10 + 5*tf ));
+            }
+            p = writeVByte( out, p, list.docID( i ) - lastDoc );
+            lastDoc = list.docID( i );
+            p = writeVByte( out, p, tf );
+            int lastPos = 0;
+            for ( int j=0; j<tf; j++ ) {
+                int pos = list.position( i, j );
+                p = writeVByte( out, p, pos - lastPos );
+                lastPos = pos;
+            }
+        }
+        return Arrays.copyOf( out, p );
+    }
+
+
+    /**
+     *  Decodes an entry (binary or text) starting at the position of
+     *  <code>buf</code>. Reads up to the limit of the buffer.
+     */
+    public static PostingsList decode( ByteBuffer buf ) {
+        if ( !isBinary( buf )) {
+            return decodeText( toString( buf ));
+        }
+        buf.get();
+        int tokenLength = readVByte( buf );
+        buf.position( buf.position() + tokenLength );
+        int df = readVByte( buf );
+        PostingsList list = new PostingsList();
+        int[] pos = new int[16];
+        int docID = 0;
+        for ( int i=0; i<df; i++ ) {
+            docID += readVByte( buf );
+            int tf = readVByte( buf );
+            if ( tf > pos.length ) {
+                pos = new int[Math.max( tf, 2*pos.length )];
+            }
+            int p = 0;
+            for ( int j=0; j<tf; j++ ) {
+                p += readVByte( buf );
+                pos[j] = p;
+            }
+            list.append( docID, 0, pos, 0, tf );
+        }
+        list.trim();
+        return list;
+    }
+
+
+    /**
+     *  Returns the token of an entry (binary or text) starting at the
+     *  position of <code>buf</code>. The position of the buffer is not changed.
+     */
+    public static String decodeToken( ByteBuffer buf ) {
+        if ( !isBinary( buf )) {
+            String s = toString( buf );
+            int star = s.indexOf( '*' );
+            return star < 0 ? s : s.substring( 0, star );
+        }
+        ByteBuffer b = buf.duplicate();
+        b.get();
+        int tokenLength = readVByte( b );
+        byte[] tokenBytes = new byte[tokenLength];
+        b.get( tokenBytes );
+        return new String( tokenBytes, StandardCharsets.UTF_8 );
+    }
+
+
+    /**
+     *  Returns true if the token of the entry at the position of <code>buf</code>
+     *  is <code>token</code> (given in UTF-8). For binary entries, the bytes
+     *  are compared in place. The position of the buffer is not changed.
+     */
+    public static boolean tokenEquals( ByteBuffer buf, byte[] token ) {
+        if ( !isBinary( buf )) {
+            return new String( token, StandardCharsets.UTF_8 ).equals( decodeToken( buf ));
+        }
+        ByteBuffer b = buf.duplicate();
+        b.get();
+        if ( readVByte( b ) != token.length || b.remaining() < token.length ) {
+            return false;
+        }
+        int p = b.position();
+        for ( int i=0; i<token.length; i++ ) {
+            if ( b.get( p + i ) != token[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     *  Returns the statistics of the postings of the binary entry at the
+     *  position of <code>buf</code>, by skipping over the positions
+     *  instead of decoding them. <code>length</code> gives the length of
+     *  a document from its docID. The position of the buffer is not changed.
+     */
+    public static TermStats termStats( ByteBuffer buf, IntUnaryOperator length ) {
+        ByteBuffer b = buf.duplicate();
+        b.get();
+        int tokenLength = readVByte( b );
+        b.position( b.position() + tokenLength );
+        int df = readVByte( b );
+        long cf = 0;
+        int maxTf = 0;
+        double maxTfNorm = 0;
+        int docID = 0;
+        for ( int i=0; i<df; i++ ) {
+            docID += readVByte( b );
+            int tf = readVByte( b );
+            cf += tf;
+            maxTf = Math.max( maxTf, tf );
+            maxTfNorm = Math.max( maxTfNorm, (double)tf / length.applyAsInt( docID ));
+            // Skip the position gaps: the last byte of each has the high bit set.
+            for ( int j=0; j<tf; ) {
+                if ( b.get() < 0 ) {
+                    j++;
+                }
+            }
+        }
+        return new TermStats( df, cf, maxTf, maxTfNorm );
+    }
+
+
+    /** Receives the postings of an entry, see forEachPosting. */
+    public interface PostingVisitor {
+        void visit( int docID, int tf );
+    }
+
+
+    /**
+     *  Calls <code>visitor</code> with the docID and the term frequency
+     *  of every posting of the binary entry at the position of
+     *  <code>buf</code>, without decoding the positions.
+     */
+    public static void forEachPosting( ByteBuffer buf, PostingVisitor visitor ) {
+        ByteBuffer b = buf.duplicate();
+        b.get();
+        int tokenLength = readVByte( b );
+        b.position( b.position() + tokenLength );
+        int df = readVByte( b );
+        int docID = 0;
+        for ( int i=0; i<df; i++ ) {
+            docID += readVByte( b );
+            int tf = readVByte( b );
+            visitor.visit( docID, tf );
+            for ( int j=0; j<tf; ) {
+                if ( b.get() < 0 ) {
+                    j++;
+                }
+            }
+        }
+    }
+
+
+    /** Returns true if the entry at the position of <code>buf</code> is binary. */
+    public static boolean isBinary( ByteBuffer buf ) {
+        return buf.remaining() > 0 && buf.get( buf.position() ) == VERSION;
+    }
+
+
+    /** Writes <code>n</code> (which must not be negative) at <code>out[p]</code>. Returns the new position. */
+    static int writeVByte( byte[] out, int p, int n ) {
+        while ( n >= 128 ) {
+            out[p++] = (byte)(n & 127);
+            n >>>= 7;
+        }
+        out[p++] = (byte)(n | 128);
+        return p;
+    }
+
+
+    /** Reads a variable-byte encoded number. */
+    static int readVByte( ByteBuffer buf ) {
+        int n = 0;
+        int shift = 0;
+        while ( true ) {
+            byte b = buf.get();
+            if ( b < 0 ) {
+                return n | ((b & 127) << shift);
+            }
+            n |= b << shift;
+            shift += 7;
+        }
+    }
+
+
+    // ==================================================================
+    //
+    //  The old text format
+
+    /**
+     *  Encodes the token and its postings list in the old text format.
+     *  Only kept to be able to compare the two formats.
+     */
+    public static byte[] encodeText( String token, PostingsList list ) {
+        StringBuilder sb = new StringBuilder( token );
+        sb.append( '*' );
+        for ( int i=0; i<list.size(); i++ ) {
+            if ( i > 0 ) {
+                sb.append( '\n' );
+            }
+            sb.append( list.docID( i )).append( ':' );
+            for ( int j=0; j<list.tf( i ); j++ ) {
+                if ( j > 0 ) {
+                    sb.append( ',' );
+                }
+                sb.append( list.position( i, j ));
+            }
+        }
+        return sb.toString().getBytes();
+    }
+
+
+    /**
+     *  Decodes an entry in the old text format.
+     */
+    public static PostingsList decodeText( String postlist_str ) {
+        PostingsList postingsList = new PostingsList();
+        String[] first_posting_list = postlist_str.split("\\*");
+        String[] posting_list = first_posting_list[1].split("\n");
+        for(int i=0 ; i < posting_list.length ; i++){
+            String[] post2 = posting_list[i].split(":");
+            int docID = Integer.parseInt(post2[0]);
+            String[] offset_stringlist = post2[1].split(",");
+            for(int j=0; j<offset_stringlist.length; j++){
+                postingsList.add(docID, Integer.parseInt(offset_stringlist[j]));
+            }
+        }
+        return postingsList;
+    }
+
+
+    private static String toString( ByteBuffer buf ) {
+        byte[] data = new byte[buf.remaining()];
+        buf.duplicate().get( data );
+        return new String( data );
+    }
+}
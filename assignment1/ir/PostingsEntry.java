@@ -7,7 +7,6 @@
 
 package ir;
 
-import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.StringTokenizer;
@@ -32,7 +31,7 @@ public class PostingsEntry implements Comparable<PostingsEntry>, Serializable {
         int tf_dt = offsetList.size();
         double doc_len = 1;
         if(normtype==NormalizationType.NUMBER_OF_WORDS) {
-            doc_len = index.docLengths.get(docID);
+            doc_len = index.getDocuments().length(docID);
         }
         if(normtype==NormalizationType.EUCLIDEAN){
             doc_len = euclidian_length;
@@ -41,13 +40,6 @@ public class PostingsEntry implements Comparable<PostingsEntry>, Serializable {
         return score*weight;
     }
 
-    public double calculate_score2( double idft, HashMap<Integer,Integer> docLengths){
-        int tf_dt = offsetList.size();
-        int doc_len = docLengths.get(docID);
-        score = tf_dt*idft/doc_len;
-        return score;
-    }
-
 
 
     public void sum_score_toentry(double score2){
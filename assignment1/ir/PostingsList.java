@@ -1,68 +1,346 @@
-/*  
+/*
  *   This file is part of the computer assignment for the
  *   Information Retrieval course at KTH.
- * 
+ *
  *   Johan Boye, 2017
- */  
+ */
 
 package ir;
 
 import java.util.*;
 
+/**
+ *  A postings list stored as parallel primitive arrays.
+ *
+ *  Entry i consists of docIDs[i] and the positions
+ *  positions[posStart[i] .. posStart[i]+posCount[i]-1], which all live
+ *  in one flat pool. Scores are not part of the postings: the score
+ *  array is only allocated when a score is written, so the lists held
+ *  by an index cost three ints per document plus one int per position.
+ */
 public class PostingsList {
-    
-    /** The postings list */
-    private ArrayList<PostingsEntry> list = new ArrayList<PostingsEntry>();
 
-    public ArrayList<PostingsEntry> getList(){
-        return list;
-    }
+    /** Initial capacity of the per-document arrays. */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /** Document identifiers, one per entry. */
+    private int[] docIDs = new int[INITIAL_CAPACITY];
+
+    /** Start of the positions of each entry in the positions pool. */
+    private int[] posStart = new int[INITIAL_CAPACITY];
+
+    /** Number of positions (the term frequency) of each entry. */
+    private int[] posCount = new int[INITIAL_CAPACITY];
+
+    /** The positions of all entries, one after the other. */
+    private int[] positions = new int[INITIAL_CAPACITY];
+
+    /** Scores of the entries, or null if no score has been set. */
+    private double[] scores = null;
+
+    /** Number of postings in this list. */
+    private int size = 0;
+
+    /** Number of used cells in the positions pool. */
+    private int posSize = 0;
 
     public double weight = 1;
 
     /** Number of postings in this list. */
     public int size() {
-    return list.size();
+        return size;
+    }
+
+    /** Returns the document identifier of the ith posting. */
+    public int docID( int i ) {
+        return docIDs[i];
+    }
+
+    /** Returns the term frequency (number of positions) of the ith posting. */
+    public int tf( int i ) {
+        return posCount[i];
+    }
+
+    /** Returns the jth position of the ith posting. */
+    public int position( int i, int j ) {
+        return positions[posStart[i] + j];
+    }
+
+    /**
+     *  Returns the index of the first posting at or after <code>from</code>
+     *  whose docID is at least <code>target</code>, or size() if there is
+     *  none. Gallops ahead from <code>from</code> in steps of 1, 2, 4, ...
+     *  and then does a binary search within the last step, so skipping n
+     *  postings costs O(log n) instead of O(n).
+     */
+    public int advance( int from, int target ) {
+        if ( from >= size || docIDs[from] >= target ) {
+            return from;
+        }
+        // docIDs[lo] < target all along
+        int lo = from;
+        int step = 1;
+        int hi = from + 1;
+        while ( hi < size && docIDs[hi] < target ) {
+            lo = hi;
+            step <<= 1;
+            hi = lo + step;
+        }
+        if ( hi > size ) {
+            hi = size;
+        }
+        // Now hi == size, or docIDs[hi] >= target
+        while ( lo + 1 < hi ) {
+            int mid = (lo + hi) >>> 1;
+            if ( docIDs[mid] < target ) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return hi;
+    }
+
+    /** Returns the score of the ith posting (0 if no score has been set). */
+    public double score( int i ) {
+        return scores == null ? 0 : scores[i];
+    }
+
+    /** Sets the score of the ith posting. */
+    public void setScore( int i, double score ) {
+        if ( scores == null ) {
+            scores = new double[docIDs.length];
+        }
+        scores[i] = score;
     }
 
-    /** Returns the ith posting. */
+    /**
+     *  Returns the ith posting as a PostingsEntry. The entry is a copy,
+     *  so changing it does not change this list.
+     */
     public PostingsEntry get( int i ) {
-    return list.get( i );
+        PostingsEntry entry = new PostingsEntry();
+        entry.docID = docIDs[i];
+        entry.score = score( i );
+        entry.offsetList = new ArrayList<Integer>( posCount[i] );
+        for ( int j=posStart[i], end=posStart[i]+posCount[i]; j<end; j++ ) {
+            entry.offsetList.add( positions[j] );
+        }
+        return entry;
     }
 
     /** Puts a new Entry)*/
     public void set(PostingsEntry postentry) {
-        if (list.size()==0) {
-            list.add(postentry);
+        if (size==0 || postentry.docID != docIDs[size - 1]) {
+            newEntry( postentry.docID, postentry.offsetList.size() );
+            for ( int j=0; j<postentry.offsetList.size(); j++ ) {
+                positions[posSize++] = postentry.offsetList.get( j );
+            }
+            posCount[size - 1] = postentry.offsetList.size();
+            if ( postentry.score != 0 ) {
+                setScore( size - 1, postentry.score );
+            }
         }
-        else if (postentry.docID != list.get(list.size() - 1).docID){
-            list.add(postentry);
+        else {
+            add( postentry.docID, postentry.offsetList.get(0) );
         }
-        else if (postentry.docID == list.get(list.size() - 1).docID){
-            int new_offset = postentry.offsetList.get(0);
-            list.get(list.size() - 1).offsetList.add(new_offset);
+    }
+
+    /**
+     *  Adds one occurrence of the term at position <code>offset</code> of
+     *  document <code>docID</code>. The docID must not be smaller than the
+     *  docID of the last posting.
+     */
+    public void add( int docID, int offset ) {
+        if ( size == 0 || docID != docIDs[size - 1] ) {
+            newEntry( docID, 1 );
+        } else {
+            ensurePositionCapacity( 1 );
         }
+        positions[posSize++] = offset;
+        posCount[size - 1]++;
     }
 
-    public double calculate_idf(Index index){
-        int N = index.docNames.size();
-        //Calculate the dft
-        double idft = Math.log((double) N/size());
-        return idft;
+    /**
+     *  Appends the ith posting of <code>other</code> (positions and score)
+     *  to this list.
+     */
+    public void append( PostingsList other, int i ) {
+        append( other.docIDs[i], other.score( i ), other.positions, other.posStart[i], other.posCount[i] );
     }
 
-    public double calculate_idf2(HashMap<Integer,String> docNames){
-        int N = docNames.size();
-        //Calculate the dft
-        double idft = Math.log(N/size());
-        return idft;
+    /**
+     *  Appends a posting whose positions are <code>pos[from .. from+len-1]</code>.
+     *  If the docID is the same as the docID of the last posting, the positions
+     *  are added to that posting instead.
+     */
+    public void append( int docID, double score, int[] pos, int from, int len ) {
+        if ( size == 0 || docID != docIDs[size - 1] ) {
+            newEntry( docID, len );
+        } else {
+            ensurePositionCapacity( len );
+        }
+        System.arraycopy( pos, from, positions, posSize, len );
+        posSize += len;
+        posCount[size - 1] += len;
+        if ( score != 0 || scores != null ) {
+            setScore( size - 1, score );
+        }
+    }
+
+    /**
+     *  Appends one posting for the document common to the ith posting of
+     *  <code>p1</code> and the jth posting of <code>p2</code>, whose
+     *  positions are the sorted union of both position lists and whose
+     *  score is the sum of both scores.
+     */
+    public void appendMerged( PostingsList p1, int i, PostingsList p2, int j ) {
+        int n1 = p1.posCount[i], n2 = p2.posCount[j];
+        newEntry( p1.docIDs[i], n1 + n2 );
+        int[] a = p1.positions, b = p2.positions;
+        int i1 = p1.posStart[i], e1 = i1 + n1;
+        int i2 = p2.posStart[j], e2 = i2 + n2;
+        int start = posSize;
+        while ( i1 < e1 && i2 < e2 ) {
+            if ( a[i1] == b[i2] ) {
+                positions[posSize++] = a[i1++];
+                i2++;
+            } else if ( a[i1] < b[i2] ) {
+                positions[posSize++] = a[i1++];
+            } else {
+                positions[posSize++] = b[i2++];
+            }
+        }
+        while ( i1 < e1 ) positions[posSize++] = a[i1++];
+        while ( i2 < e2 ) positions[posSize++] = b[i2++];
+        posCount[size - 1] = posSize - start;
+        double score = p1.score( i ) + p2.score( j );
+        if ( score != 0 ) {
+            setScore( size - 1, score );
+        }
+    }
+
+    /** Starts a new posting with room for <code>npos</code> positions. */
+    private void newEntry( int docID, int npos ) {
+        if ( size == docIDs.length ) {
+            int capacity = docIDs.length * 2;
+            docIDs = Arrays.copyOf( docIDs, capacity );
+            posStart = Arrays.copyOf( posStart, capacity );
+            posCount = Arrays.copyOf( posCount, capacity );
+            if ( scores != null ) {
+                scores = Arrays.copyOf( scores, capacity );
+            }
+        }
+        ensurePositionCapacity( npos );
+        docIDs[size] = docID;
+        posStart[size] = posSize;
+        posCount[size] = 0;
+        size++;
+    }
+
+    private void ensurePositionCapacity( int extra ) {
+        if ( posSize + extra > positions.length ) {
+            positions = Arrays.copyOf( positions, Math.max( positions.length * 2, posSize + extra ));
+        }
+    }
+
+    /**
+     *  Releases the unused capacity of the arrays. Called on lists that
+     *  will not grow any more.
+     */
+    public void trim() {
+        if ( docIDs.length > size ) {
+            docIDs = Arrays.copyOf( docIDs, size );
+            posStart = Arrays.copyOf( posStart, size );
+            posCount = Arrays.copyOf( posCount, size );
+            if ( scores != null ) {
+                scores = Arrays.copyOf( scores, size );
+            }
+        }
+        if ( positions.length > posSize ) {
+            positions = Arrays.copyOf( positions, posSize );
+        }
     }
 
+    /** Returns an estimate of the number of bytes this list takes on the heap. */
+    public long heapSize() {
+        // The object and the headers of its arrays
+        long bytes = 48 + 4*16;
+        bytes += 4L * (3*docIDs.length + positions.length);
+        if ( scores != null ) {
+            bytes += 16 + 8L*scores.length;
+        }
+        return bytes;
+    }
 
+    /**
+     *  Computes the tf-idf score of the ith posting and stores it as the
+     *  score of that posting (see PostingsEntry.calculate_score).
+     */
+    public double calculate_score( int i, double idft, Index index, NormalizationType normtype, double euclidian_length, double weight ) {
+        double doc_len = 1;
+        if ( normtype == NormalizationType.NUMBER_OF_WORDS ) {
+            doc_len = index.getDocuments().length( docIDs[i] );
+        }
+        if ( normtype == NormalizationType.EUCLIDEAN ) {
+            doc_len = euclidian_length;
+        }
+        double score = tf_idf( i, idft, doc_len, weight );
+        setScore( i, score );
+        return score;
+    }
 
+    /**
+     *  Returns the tf-idf score of the ith posting in a document of length
+     *  <code>doc_len</code>, without storing it.
+     */
+    public double tf_idf( int i, double idft, double doc_len, double weight ) {
+        return (posCount[i]*idft/doc_len)*weight;
+    }
 
+    public double calculate_idf(Index index){
+        int N = index.getDocuments().size();
+        //Calculate the dft
+        double idft = Math.log((double) N/size());
+        return idft;
+    }
+
+
+    /**
+     *  Sorts the postings by decreasing score. Postings with equal
+     *  scores keep their relative order.
+     */
     public void sort_posting(){
-        Collections.sort(list);
+        if ( size < 2 ) {
+            return;
+        }
+        Integer[] order = new Integer[size];
+        for ( int i=0; i<size; i++ ) {
+            order[i] = i;
+        }
+        final double[] s = scores == null ? new double[size] : scores;
+        Arrays.sort( order, (a, b) -> Double.compare( s[b], s[a] ));
+
+        int[] newDocIDs = new int[size];
+        int[] newStart = new int[size];
+        int[] newCount = new int[size];
+        int[] newPositions = new int[posSize];
+        double[] newScores = new double[size];
+        int p = 0;
+        for ( int i=0; i<size; i++ ) {
+            int k = order[i];
+            newDocIDs[i] = docIDs[k];
+            newStart[i] = p;
+            newCount[i] = posCount[k];
+            newScores[i] = s[k];
+            System.arraycopy( positions, posStart[k], newPositions, p, posCount[k] );
+            p += posCount[k];
+        }
+        docIDs = newDocIDs;
+        posStart = newStart;
+        posCount = newCount;
+        positions = newPositions;
+        scores = newScores;
     }
 
 }
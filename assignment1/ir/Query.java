@@ -136,7 +136,7 @@ public class Query {
             boolean value = docIsRelevant[i];
             if (value) {
                 PostingsEntry entry = results.get(i);
-                String path_name = engine.index.docNames.get(entry.docID);
+                String path_name = engine.index.getDocuments().name(entry.docID);
                 if(path_name.equals("/Users/annasanchezespunyes/Documents/KTH/Search_Engines/davisWiki/Math.f")){
                     path_name = "/Users/annasanchezespunyes/Documents/KTH/Search_Engines/davisWiki/Mathematics.f";
                 }
@@ -0,0 +1,217 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ *  Runs a file of queries against an index and reports the throughput
+ *  and the latency of each query type.
+ *
+ *  Each line of the query file is <code>type;ranking;query</code>,
+ *  where type is intersection, phrase or ranked and ranking is tf_idf,
+ *  pagerank, combination or hits (it may be left empty for unranked
+ *  queries). A line without ';' is an intersection query. Empty lines
+ *  and lines starting with '#' are skipped.
+ *
+ *  The index is loaded or built by an Engine without GUI, so all Engine
+ *  options apply (-d, -p, -ni, -threads, -cache, ...). The options of
+ *  the runner itself are:
+ *
+ *     -queries file    the query file (required)
+ *     -clients n       number of threads sending queries (default 1)
+ *     -warmup n        rounds over all queries before measuring (default 1)
+ *     -rounds n        rounds that are measured (default 1)
+ *     -k n             number of results per query, 0 for all (default 0)
+ *     -norm words|euclidean
+ *     -o file          writes the docIDs of the results of every query,
+ *                      one line per query, to compare index implementations
+ *
+ *  Usage: java -cp classes ir.QueryRunner -queries file [options] [Engine options]
+ */
+public class QueryRunner {
+
+    /** One line of the query file. */
+    static class QueryLine {
+        final QueryType type;
+        final RankingType ranking;
+        final String text;
+
+        QueryLine( QueryType type, RankingType ranking, String text ) {
+            this.type = type;
+            this.ranking = ranking;
+            this.text = text;
+        }
+    }
+
+
+    final Searcher searcher;
+    final ArrayList<QueryLine> queries;
+    final int clients;
+    final int k;
+    final NormalizationType normType;
+
+    /** Latency of each query type in the measured rounds. */
+    final ConcurrentHashMap<QueryType,LatencyHistogram> latencies = new ConcurrentHashMap<QueryType,LatencyHistogram>();
+
+    /** The docIDs of the results of each query, from the first measured round. */
+    final String[] results;
+
+
+    QueryRunner( Searcher searcher, ArrayList<QueryLine> queries, int clients, int k, NormalizationType normType ) {
+        this.searcher = searcher;
+        this.queries = queries;
+        this.clients = clients;
+        this.k = k;
+        this.normType = normType;
+        this.results = new String[queries.size()];
+    }
+
+
+    /** Reads the query file. */
+    static ArrayList<QueryLine> readQueries( String fileName ) throws IOException {
+        ArrayList<QueryLine> queries = new ArrayList<QueryLine>();
+        try ( BufferedReader in = new BufferedReader( new InputStreamReader( new FileInputStream( fileName ), StandardCharsets.UTF_8 ))) {
+            String line;
+            while ( (line = in.readLine()) != null ) {
+                line = line.trim();
+                if ( line.isEmpty() || line.startsWith( "#" )) {
+                    continue;
+                }
+                String[] parts = line.split( ";", 3 );
+                if ( parts.length < 3 ) {
+                    queries.add( new QueryLine( QueryType.INTERSECTION_QUERY, RankingType.TF_IDF, parts[parts.length-1] ));
+                } else {
+                    RankingType ranking = parts[1].trim().isEmpty() ? RankingType.TF_IDF : QueryServer.parseRankingType( parts[1] );
+                    queries.add( new QueryLine( QueryServer.parseQueryType( parts[0] ), ranking, parts[2] ));
+                }
+            }
+        }
+        return queries;
+    }
+
+
+    /**
+     *  Runs all queries <code>rounds</code> times on the client threads.
+     *  Returns the elapsed time in nanoseconds.
+     */
+    long run( int rounds, boolean measure ) throws InterruptedException {
+        int n = queries.size();
+        long total = (long)rounds * n;
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool( clients );
+        long start = System.nanoTime();
+        for ( int c=0; c<clients; c++ ) {
+            pool.execute( () -> {
+                    int i;
+                    while ( (i = next.getAndIncrement()) < total ) {
+                        QueryLine q = queries.get( i % n );
+                        Query query = new Query( q.text.toLowerCase().trim() );
+                        long t = System.nanoTime();
+                        PostingsList list = k > 0
+                            ? searcher.search( query, q.type, q.ranking, normType, k )
+                            : searcher.search( query, q.type, q.ranking, normType );
+                        t = System.nanoTime() - t;
+                        if ( measure ) {
+                            latencies.computeIfAbsent( q.type, type -> new LatencyHistogram() ).record( t );
+                            if ( i < n ) {
+                                results[i] = docIDs( list );
+                            }
+                        }
+                    }
+                });
+        }
+        pool.shutdown();
+        pool.awaitTermination( Long.MAX_VALUE, TimeUnit.NANOSECONDS );
+        return System.nanoTime() - start;
+    }
+
+
+    /** Returns the docIDs of a result, separated by spaces. */
+    static String docIDs( PostingsList list ) {
+        if ( list == null ) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for ( int i=0; i<list.size(); i++ ) {
+            sb.append( i > 0 ? " " : "" ).append( list.docID( i ));
+        }
+        return sb.toString();
+    }
+
+
+    /** Writes one line per query: the query and the docIDs of its results. */
+    void writeResults( String fileName ) throws IOException {
+        try ( PrintWriter out = new PrintWriter( new OutputStreamWriter( new FileOutputStream( fileName ), StandardCharsets.UTF_8 ))) {
+            for ( int i=0; i<queries.size(); i++ ) {
+                QueryLine q = queries.get( i );
+                out.println( q.type + ";" + q.ranking + ";" + q.text + "\t" + results[i] );
+            }
+        }
+    }
+
+
+    public static void main( String[] args ) throws Exception {
+        String queryFile = null;
+        String outFile = null;
+        int clients = 1;
+        int warmup = 1;
+        int rounds = 1;
+        int k = 0;
+        NormalizationType normType = NormalizationType.NUMBER_OF_WORDS;
+        ArrayList<String> engineArgs = new ArrayList<String>();
+        engineArgs.add( "-headless" );
+        for ( int i=0; i<args.length; i++ ) {
+            if ( "-queries".equals( args[i] ) && i+1 < args.length ) {
+                queryFile = args[++i];
+            } else if ( "-clients".equals( args[i] ) && i+1 < args.length ) {
+                clients = Integer.parseInt( args[++i] );
+            } else if ( "-warmup".equals( args[i] ) && i+1 < args.length ) {
+                warmup = Integer.parseInt( args[++i] );
+            } else if ( "-rounds".equals( args[i] ) && i+1 < args.length ) {
+                rounds = Integer.parseInt( args[++i] );
+            } else if ( "-k".equals( args[i] ) && i+1 < args.length ) {
+                k = Integer.parseInt( args[++i] );
+            } else if ( "-norm".equals( args[i] ) && i+1 < args.length ) {
+                normType = QueryServer.parseNormalizationType( args[++i] );
+            } else if ( "-o".equals( args[i] ) && i+1 < args.length ) {
+                outFile = args[++i];
+            } else {
+                engineArgs.add( args[i] );
+            }
+        }
+        if ( queryFile == null ) {
+            System.err.println( "Usage: QueryRunner -queries file [-clients n] [-warmup n] [-rounds n] [-k n] [-norm words|euclidean] [-o file] [Engine options]" );
+            return;
+        }
+
+        ArrayList<QueryLine> queries = readQueries( queryFile );
+        Engine engine = new Engine( engineArgs.toArray( new String[0] ));
+        QueryRunner runner = new QueryRunner( engine.searcher, queries, clients, k, normType );
+
+        runner.run( warmup, false );
+        long nanos = runner.run( rounds, true );
+
+        long n = (long)rounds * queries.size();
+        System.err.println( String.format( "%d queries in %.3f s with %d client(s): %.1f queries/s",
+                                           n, nanos / 1e9, clients, n / (nanos / 1e9) ));
+        for ( QueryType type : QueryType.values() ) {
+            LatencyHistogram h = runner.latencies.get( type );
+            if ( h != null ) {
+                System.err.println( "  " + type + ": " + h.summary() );
+            }
+        }
+        if ( outFile != null ) {
+            runner.writeResults( outFile );
+        }
+        System.exit( 0 );
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ *  Serves the searcher of an Engine over HTTP, for running without a GUI.
+ *
+ *  The server listens on the loopback interface only, and answers:
+ *
+ *     GET /search?q=QUERY[&type=T][&ranking=R][&norm=N][&k=K]
+ *
+ *  type is intersection (the default), phrase or ranked; ranking is
+ *  tf_idf (the default), pagerank, combination or hits; norm is words
+ *  (the default) or euclidean; k is the number of results (10 by
+ *  default, 0 for all of them). The full enum names (RANKED_QUERY,
+ *  NUMBER_OF_WORDS, ...) are accepted as well. The answer is a JSON
+ *  object with the results, best first, and the search time.
+ *
+ *     GET /stats
+ *
+ *  returns the latency histograms of the searches so far, one per query
+ *  type, as a JSON object. They are also printed when the server stops.
+ *
+ *  Requests are handled by a fixed pool of threads, which all share the
+ *  searcher (see Searcher).
+ */
+public class QueryServer {
+
+    /** The engine whose searcher answers the queries. */
+    final Engine engine;
+
+    final HttpServer server;
+
+    final ExecutorService pool;
+
+    /** Latency of the searches of each query type. */
+    final ConcurrentHashMap<QueryType,LatencyHistogram> latencies = new ConcurrentHashMap<QueryType,LatencyHistogram>();
+
+
+    /**
+     *  Creates a server for <code>engine</code> on <code>port</code>,
+     *  which handles requests on <code>threads</code> threads.
+     */
+    public QueryServer( Engine engine, int port, int threads ) throws IOException {
+        this.engine = engine;
+        server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), port ), 0 );
+        pool = Executors.newFixedThreadPool( threads );
+        server.setExecutor( pool );
+        server.createContext( "/search", this::handleSearch );
+        server.createContext( "/stats", this::handleStats );
+    }
+
+
+    /** Starts serving, and prints the latencies when the JVM exits. */
+    public void start() {
+        server.start();
+        Runtime.getRuntime().addShutdownHook( new Thread( () -> {
+                    server.stop( 0 );
+                    pool.shutdown();
+                    printStatistics();
+                }));
+        System.err.println( "Serving queries on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/search" );
+    }
+
+
+    void handleSearch( HttpExchange exchange ) throws IOException {
+        try {
+            Map<String,String> params = parameters( exchange.getRequestURI().getRawQuery() );
+            String q = params.get( "q" );
+            if ( q == null || q.trim().isEmpty() ) {
+                respond( exchange, 400, error( "missing parameter q" ));
+                return;
+            }
+            QueryType queryType = parseQueryType( params.getOrDefault( "type", "intersection" ));
+            RankingType rankingType = parseRankingType( params.getOrDefault( "ranking", "tf_idf" ));
+            NormalizationType normType = parseNormalizationType( params.getOrDefault( "norm", "words" ));
+            int k = Integer.parseInt( params.getOrDefault( "k", "10" ));
+            if ( k <= 0 ) {
+                k = Integer.MAX_VALUE;
+            }
+            Searcher searcher = engine.searcher;
+            if ( searcher == null ) {
+                respond( exchange, 503, error( "indexing, please wait" ));
+                return;
+            }
+
+            Query query = new Query( q.toLowerCase().trim() );
+            long start = System.nanoTime();
+            PostingsList results = searcher.search( query, queryType, rankingType, normType, k );
+            long nanos = System.nanoTime() - start;
+            latencies.computeIfAbsent( queryType, t -> new LatencyHistogram() ).record( nanos );
+
+            StringBuilder json = new StringBuilder();
+            json.append( "{\"query\": " ).append( quote( q ));
+            json.append( ", \"type\": " ).append( quote( queryType.name() ));
+            json.append( ", \"ranking\": " ).append( quote( rankingType.name() ));
+            json.append( ", \"normalization\": " ).append( quote( normType.name() ));
+            json.append( ", \"micros\": " ).append( nanos / 1000 );
+            json.append( ", \"results\": [" );
+            for ( int i=0; results != null && i<results.size(); i++ ) {
+                int docID = results.docID( i );
+                json.append( i > 0 ? ", " : "" );
+                json.append( "{\"docID\": " ).append( docID );
+                json.append( ", \"name\": " ).append( quote( engine.index.getDocuments().name( docID )));
+                json.append( ", \"score\": " ).append( number( results.score( i ))).append( "}" );
+            }
+            json.append( "]}" );
+            respond( exchange, 200, json.toString() );
+        } catch ( IllegalArgumentException e ) {
+            respond( exchange, 400, error( e.getMessage() ));
+        } catch ( RuntimeException e ) {
+            e.printStackTrace();
+            respond( exchange, 500, error( e.toString() ));
+        }
+    }
+
+
+    void handleStats( HttpExchange exchange ) throws IOException {
+        StringBuilder json = new StringBuilder( "{" );
+        for ( QueryType type : QueryType.values() ) {
+            LatencyHistogram h = latencies.get( type );
+            if ( h != null ) {
+                json.append( json.length() > 1 ? ", " : "" );
+                json.append( quote( type.name() )).append( ": " ).append( h.toJson() );
+            }
+        }
+        json.append( "}" );
+        respond( exchange, 200, json.toString() );
+    }
+
+
+    /** Prints the latency histogram of every query type. */
+    public void printStatistics() {
+        for ( QueryType type : QueryType.values() ) {
+            LatencyHistogram h = latencies.get( type );
+            if ( h != null ) {
+                System.err.println( type + ": " + h.summary() );
+            }
+        }
+    }
+
+
+    static void respond( HttpExchange exchange, int status, String json ) throws IOException {
+        byte[] body = json.getBytes( StandardCharsets.UTF_8 );
+        exchange.getResponseHeaders().set( "Content-Type", "application/json; charset=utf-8" );
+        exchange.sendResponseHeaders( status, body.length );
+        try ( OutputStream out = exchange.getResponseBody() ) {
+            out.write( body );
+        }
+    }
+
+
+    /** Decodes the parameters of a query string. */
+    static Map<String,String> parameters( String rawQuery ) {
+        HashMap<String,String> params = new HashMap<String,String>();
+        if ( rawQuery == null ) {
+            return params;
+        }
+        for ( String pair : rawQuery.split( "&" )) {
+            int eq = pair.indexOf( '=' );
+            String key = eq < 0 ? pair : pair.substring( 0, eq );
+            String value = eq < 0 ? "" : pair.substring( eq + 1 );
+            params.put( URLDecoder.decode( key, StandardCharsets.UTF_8 ), URLDecoder.decode( value, StandardCharsets.UTF_8 ));
+        }
+        return params;
+    }
+
+
+    static String error( String message ) {
+        return "{\"error\": " + quote( message ) + "}";
+    }
+
+
+    /** Returns <code>s</code> as a JSON string. */
+    static String quote( String s ) {
+        if ( s == null ) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder( "\"" );
+        for ( int i=0; i<s.length(); i++ ) {
+            char c = s.charAt( i );
+            if ( c == '"' || c == '\\' ) {
+                sb.append( '\\' ).append( c );
+            } else if ( c < 0x20 ) {
+                sb.append( String.format( "\\u%04x", (int)c ));
+            } else {
+                sb.append( c );
+            }
+        }
+        return sb.append( '"' ).toString();
+    }
+
+
+    /** Returns <code>x</code> as a JSON number, or null if it is NaN or infinite, which JSON has no numbers for. */
+    static String number( double x ) {
+        return Double.isNaN( x ) || Double.isInfinite( x ) ? "null" : Double.toString( x );
+    }
+
+
+    // ==================================================================
+    //
+    //  Names of the query, ranking and normalization types
+
+    /** Parses a query type: intersection, phrase, ranked, or the enum name. */
+    static QueryType parseQueryType( String s ) {
+        String name = s.trim().toUpperCase( Locale.ROOT );
+        if ( !name.endsWith( "_QUERY" )) {
+            name += "_QUERY";
+        }
+        return QueryType.valueOf( name );
+    }
+
+
+    /** Parses a ranking type: tf_idf, pagerank, combination or hits. */
+    static RankingType parseRankingType( String s ) {
+        return RankingType.valueOf( s.trim().toUpperCase( Locale.ROOT ));
+    }
+
+
+    /** Parses a normalization type: words, euclidean, or the enum name. */
+    static NormalizationType parseNormalizationType( String s ) {
+        String name = s.trim().toUpperCase( Locale.ROOT );
+        return "WORDS".equals( name ) ? NormalizationType.NUMBER_OF_WORDS : NormalizationType.valueOf( name );
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.util.*;
+
+
+/**
+ *  Compares three ways of answering ranked tf-idf queries, on random
+ *  queries of increasing length: the union of scored postings lists
+ *  used before (see unionSearch), the term-at-a-time AccumulatorScorer (all results) and
+ *  the top-k search of MaxScoreScorer. Checks that all three rank the
+ *  documents the same, with the same scores.
+ *
+ *  Usage: java -cp classes ir.RankedBenchmark -d dir [-p patterns_file] [-n queries] [-k topK]
+ */
+public class RankedBenchmark {
+
+    public static void main( String[] args ) {
+        String dir = null;
+        String patterns_file = null;
+        int numQueries = 200;
+        int topK = 10;
+        for ( int i=0; i<args.length; i++ ) {
+            if ( "-d".equals( args[i] ) && i+1 < args.length ) {
+                dir = args[++i];
+            } else if ( "-p".equals( args[i] ) && i+1 < args.length ) {
+                patterns_file = args[++i];
+            } else if ( "-n".equals( args[i] ) && i+1 < args.length ) {
+                numQueries = Integer.parseInt( args[++i] );
+            } else if ( "-k".equals( args[i] ) && i+1 < args.length ) {
+                topK = Integer.parseInt( args[++i] );
+            } else {
+                System.err.println( "Unknown option: " + args[i] );
+            }
+        }
+        if ( dir == null ) {
+            System.err.println( "Usage: RankedBenchmark -d dir [-p patterns_file] [-n queries] [-k topK]" );
+            return;
+        }
+
+        HashedIndex index = new HashedIndex();
+        KGramIndex kgIndex = new KGramIndex( 2 );
+        Indexer indexer = new Indexer( index, kgIndex, patterns_file );
+        indexer.processFiles( new File( dir ), true );
+        index.cleanup();
+        Searcher searcher = new Searcher( index, kgIndex );
+
+        // Query terms are drawn from the 2000 terms with the highest document
+        // frequencies, which have the longest postings lists.
+        ArrayList<String> terms = new ArrayList<String>( kgIndex.id2term.values() );
+        Collections.sort( terms );
+        terms.sort( (a, b) -> Integer.compare( index.getPostings( b ).size(), index.getPostings( a ).size() ));
+        List<String> common = terms.subList( 0, Math.min( 2000, terms.size() ));
+
+        Random random = new Random( 1 );
+        for ( int length : new int[] { 2, 4, 8, 16 } ) {
+            ArrayList<Query> queries = new ArrayList<Query>();
+            for ( int i=0; i<numQueries; i++ ) {
+                StringBuilder sb = new StringBuilder();
+                for ( int j=0; j<length; j++ ) {
+                    sb.append( common.get( random.nextInt( common.size() ))).append( ' ' );
+                }
+                queries.add( new Query( sb.toString().trim() ));
+            }
+            long unionNanos = 0, accumulatorNanos = 0, topKNanos = 0;
+            int differences = 0;
+            for ( int round=0; round<2; round++ ) {
+                unionNanos = 0;
+                accumulatorNanos = 0;
+                topKNanos = 0;
+                for ( Query query : queries ) {
+                    long start = System.nanoTime();
+                    PostingsList union = unionSearch( searcher, index, kgIndex, query, NormalizationType.NUMBER_OF_WORDS );
+                    unionNanos += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    PostingsList all = searcher.search( query, QueryType.RANKED_QUERY, RankingType.TF_IDF, NormalizationType.NUMBER_OF_WORDS );
+                    accumulatorNanos += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    PostingsList best = searcher.search( query, QueryType.RANKED_QUERY, RankingType.TF_IDF, NormalizationType.NUMBER_OF_WORDS, topK );
+                    topKNanos += System.nanoTime() - start;
+                    if ( round == 0 && !(sameResults( union, all, union.size() ) && sameResults( union, best, topK ))) {
+                        differences++;
+                    }
+                }
+            }
+            System.err.println( String.format( "%2d terms: union %7.3f ms/query, accumulators %7.3f ms/query, top %d %7.3f ms/query, %d different results",
+                                               length, unionNanos / 1e6 / numQueries, accumulatorNanos / 1e6 / numQueries,
+                                               topK, topKNanos / 1e6 / numQueries, differences ));
+        }
+    }
+
+
+    /**
+     *  The ranked tf-idf search used before AccumulatorScorer: the
+     *  postings lists of the query terms are scored and merged with
+     *  Searcher.union, and the result is sorted. The lists of the index
+     *  are copied before they are scored, so the index is not changed.
+     */
+    static PostingsList unionSearch( Searcher searcher, Index index, KGramIndex kgIndex, Query query, NormalizationType normtype ) {
+        DocColumn lengths = index.euclideanLengths();
+        int n = index.getDocuments().size();
+        PostingsList result = new PostingsList();
+        for ( Query.QueryTerm term : query.queryterm ) {
+            for ( String word : kgIndex.resolve_string_wildcard( term.term )) {
+                PostingsList list = index.getPostings( word );
+                if ( list == null ) {
+                    continue;
+                }
+                double idf = index.getTermStats( word ).idf( n );
+                PostingsList scored = new PostingsList();
+                for ( int j=0; j<list.size(); j++ ) {
+                    scored.append( list, j );
+                    double length = lengths == null ? 0 : lengths.get( list.docID( j ));
+                    scored.calculate_score( j, idf, index, normtype, length, term.weight );
+                }
+                result = searcher.union( scored, result );
+            }
+        }
+        result.sort_posting();
+        return result;
+    }
+
+
+    /** Returns true if <code>best</code> is the first k documents of <code>all</code>, with the same scores. */
+    static boolean sameResults( PostingsList all, PostingsList best, int k ) {
+        if ( best.size() != Math.min( k, all.size() )) {
+            return false;
+        }
+        for ( int i=0; i<best.size(); i++ ) {
+            if ( all.docID( i ) != best.docID( i ) || all.score( i ) != best.score( i )) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
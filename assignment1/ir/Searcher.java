@@ -6,13 +6,18 @@
  */  
 
 package ir;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 
 /**
  *  Searches an index for results of a query.
+ *
+ *  Searching has no side effects: the postings lists of the index are
+ *  only read, and the scoring state of a query lives in the query or
+ *  in per-thread scorers. One Searcher can serve any number of threads
+ *  at the same time, as long as nothing is inserted into the index.
  */
 public class Searcher {
 
@@ -22,16 +27,53 @@ public class Searcher {
     /** The k-gram index to be searched by this Searcher */
     KGramIndex kgIndex;
 
-    HashMap<Integer,Double> ranking_hash;
+    /** The pageranks of the documents, from the index (see DocumentPriors). */
+    DocColumn pagerank;
 
-    HashMap<Integer,Double> euclidian_length;
+    /** The euclidean lengths of the documents, from the index. */
+    DocColumn euclidian_length;
+
+    /** The links file of the HITS link graph. */
+    static final String LINKS_FILE = "pagerank/linksDavis.txt";
+
+    /** The titles file of the HITS link graph. */
+    static final String TITLES_FILE = "pagerank/davisTitles.txt";
+
+    /**
+     *  The link graph for HITS ranking, read by the first HITS query and
+     *  then shared by all queries, or null before that.
+     */
+    private volatile LinkGraph linkGraph;
+
+    /**
+     *  Why the link graph could not be read, or null. The graph is only
+     *  read once: after a failure, HITS queries have no results.
+     */
+    private volatile IOException linkGraphError;
+
+    /**
+     *  Scores ranked queries, one scorer per thread. The arrays of a
+     *  scorer are reused from one query of its thread to the next.
+     */
+    final ThreadLocal<AccumulatorScorer> accumulators =
+        ThreadLocal.withInitial( () -> new AccumulatorScorer( index, pagerank, euclidian_length ));
+
+    /**
+     *  Ranks HITS queries, one ranker per thread, created once the link
+     *  graph has been read. The marks of a ranker are reused from one
+     *  query of its thread to the next.
+     */
+    final ThreadLocal<HITSRanker> hitsRankers =
+        ThreadLocal.withInitial( () -> new HITSRanker( linkGraph(), index ));
     
-    /** Constructor */
-    public Searcher(Index index, KGramIndex kgIndex, HashMap<Integer,Double> ranking_hash, HashMap<Integer,Double> euclidian_length ) {
+    /** Constructor. The index must be complete (cleanup() has been called). */
+    public Searcher(Index index, KGramIndex kgIndex) {
         this.index = index;
         this.kgIndex = kgIndex;
-        this.ranking_hash = ranking_hash;
-        this.euclidian_length = euclidian_length;
+        DocColumn priors = index.priors();
+        this.pagerank = priors != null ? priors : new DocColumn(new double[0]);
+        DocColumn lengths = index.euclideanLengths();
+        this.euclidian_length = lengths != null ? lengths : new DocColumn(new double[0]);
 
     }
 
@@ -62,37 +104,119 @@ public class Searcher {
         }
     }
 
+    /**
+     *  Searches the index for the <code>topK</code> best results of the
+     *  query. Ranked tf-idf queries are answered by a MaxScoreScorer,
+     *  without scoring every posting, and the other ranked queries by an
+     *  AccumulatorScorer. Phrase queries stop after the first
+     *  <code>topK</code> documents. For all other queries, this is the
+     *  first <code>topK</code> results of the search above.
+     */
+    public PostingsList search( Query query, QueryType queryType, RankingType rankingType, NormalizationType normtype, int topK ) {
+        if ( queryType == QueryType.RANKED_QUERY && rankingType == RankingType.TF_IDF ) {
+            PostingsList result = search_engine_topk( query, normtype, topK );
+            if ( result != null ) {
+                return result;
+            }
+        }
+        if ( queryType == QueryType.RANKED_QUERY && rankingType != RankingType.HITS ) {
+            return search_engine_ranked_taat( query, rankingType, normtype, topK );
+        }
+        if ( queryType == QueryType.PHRASE_QUERY ) {
+            // Phrase results are in docID order, so stop after the first topK
+            ArrayList<String> stringquery = new ArrayList<String>();
+            for ( Query.QueryTerm t : query.queryterm ) {
+                stringquery.add( t.term );
+            }
+            return search_engine_phrase_query( stringquery, topK );
+        }
+        PostingsList result = search( query, queryType, rankingType, normtype );
+        if ( result == null || result.size() <= topK ) {
+            return result;
+        }
+        PostingsList first = new PostingsList();
+        for ( int i = 0; i < topK; i++ ) {
+            first.append( result, i );
+        }
+        return first;
+    }
+
+    /**
+     *  Returns the <code>topK</code> best documents for a ranked tf-idf
+     *  query, or null if the scores of the terms cannot be bounded (then
+     *  the exhaustive search has to be used).
+     */
+    PostingsList search_engine_topk( Query query, NormalizationType normtype, int topK ) {
+        MaxScoreScorer scorer = new MaxScoreScorer( index, normtype, euclidian_length );
+        int n = index.getDocuments().size();
+        for ( int i = 0; i < query.queryterm.size(); i++ ) {
+            double weight = query.queryterm.get(i).weight;
+            ArrayList<String> words = kgIndex.resolve_string_wildcard( query.queryterm.get(i).term );
+            for ( String word : words ) {
+                PostingsList list = index.getPostings( word );
+                if ( list == null ) {
+                    continue;
+                }
+                TermStats stats = index.getTermStats( word );
+                double idf = stats.idf( n );
+                double bound;
+                if ( normtype == NormalizationType.EUCLIDEAN ) {
+                    bound = stats.maxTf * idf / min_euclidian_length() * weight;
+                } else {
+                    bound = stats.maxTfNorm * idf * weight;
+                }
+                if ( weight < 0 || Double.isNaN( bound ) || Double.isInfinite( bound )) {
+                    return null;
+                }
+                scorer.add( list, idf, weight, bound );
+            }
+        }
+        return scorer.topK( topK );
+    }
+
+    /**
+     *  The smallest euclidean length of a document, 0 if some document
+     *  has none, or -1 until it has been computed. Documents of length 0
+     *  are left out: all their terms have idf 0, so they cannot score,
+     *  and they would make every bound infinite. Threads that compute
+     *  it at the same time all get the same value.
+     */
+    private volatile double minEuclidianLength = -1;
+
+    private double min_euclidian_length() {
+        if ( minEuclidianLength < 0 ) {
+            minEuclidianLength = euclidian_length.minPositive( index.getDocuments().limit() );
+        }
+        return minEuclidianLength;
+    }
+
     public PostingsList merge(PostingsList p1, PostingsList p2) {
         PostingsList result = new PostingsList();
         int p1_index = 0, p2_index = 0;
         int p1_length = p1.size(), p2_length = p2.size();
 
         while (p1_index < p1_length & p2_index < p2_length){
-            int p1_docID = p1.get(p1_index).docID,  p2_docID = p2.get(p2_index).docID;
+            int p1_docID = p1.docID(p1_index),  p2_docID = p2.docID(p2_index);
             if (p1_docID  == p2_docID) {
-                PostingsEntry newEntry = new PostingsEntry();
-                newEntry.score = p1.get(p1_index).score + p2.get(p2_index).score;
-                newEntry.docID = p1_docID;
-                newEntry.offsetList = merge_offsets(p1.get(p1_index).offsetList, p2.get(p2_index).offsetList);
-                result.set(newEntry);
+                result.appendMerged(p1, p1_index, p2, p2_index);
                 p1_index++;
                 p2_index++;
             } else if (p1_docID < p2_docID) {
-                result.set(p1.get(p1_index));
+                result.append(p1, p1_index);
                 p1_index++;
             } else {
-                result.set(p2.get(p2_index));
+                result.append(p2, p2_index);
                 p2_index++;
             }
         }
 
         while (p1_index < p1_length){
-            result.set(p1.get(p1_index));
+            result.append(p1, p1_index);
             p1_index++;
         }
 
         while (p2_index < p2_length){
-            result.set(p2.get(p2_index));
+            result.append(p2, p2_index);
             p2_index++;
         }
 
@@ -108,32 +232,30 @@ public class Searcher {
         int i2 = 0;
         //if (l1>0 && l2>0){
             while (i1 < l1 && i2 < l2) {
-                PostingsEntry pp1 = p1.get(i1);
-                PostingsEntry pp2 = p2.get(i2);
-                if (pp1.docID == pp2.docID) {
-                    pp1.sum_score_toentry(pp2.score);
-                    p3.set(pp1);
+                int d1 = p1.docID(i1);
+                int d2 = p2.docID(i2);
+                if (d1 == d2) {
+                    p3.append(p1, i1);
+                    p3.setScore(p3.size() - 1, p1.score(i1) + p2.score(i2));
                     i1 = i1 + 1;
                     i2 = i2 + 1;
 
-                } else if (pp1.docID < pp2.docID) {
-                    p3.set(pp1);
+                } else if (d1 < d2) {
+                    p3.append(p1, i1);
                     i1 = i1 + 1;
                 } else {
-                    p3.set(pp2);
+                    p3.append(p2, i2);
                     i2 = i2 + 1;
                 }
             }
             if (i1 < l1) {
                 while(i1<l1){
-                    PostingsEntry pp1 = p1.get(i1);
-                    p3.set(pp1);
+                    p3.append(p1, i1);
                     i1 = i1 + 1;
                 }
             } else if (i2 < l2) {
                 while(i2<l2){
-                    PostingsEntry pp2 = p2.get(i2);
-                    p3.set(pp2);
+                    p3.append(p2, i2);
                     i2 = i2 + 1;
                 }
             }
@@ -149,17 +271,18 @@ public class Searcher {
         int i2 = 0;
         if (l1>0 && l2>0){
             while (i1 < l1 && i2 < l2) {
-                PostingsEntry pp1 = p1.get(i1);
-                PostingsEntry pp2 = p2.get(i2);
-                if (pp1.docID == pp2.docID) {
-                    p3.set(pp1);
+                int d1 = p1.docID(i1);
+                int d2 = p2.docID(i2);
+                if (d1 == d2) {
+                    p3.append(p1, i1);
                     i1 = i1 + 1;
                     i2 = i2 + 1;
 
-                } else if (pp1.docID < pp2.docID) {
-                    i1 = i1 + 1;
+                } else if (d1 < d2) {
+                    // Gallop over the postings of p1 that cannot match
+                    i1 = p1.advance(i1, d2);
                 } else {
-                    i2 = i2 + 1;
+                    i2 = p2.advance(i2, d1);
                 }
             }
         }
@@ -214,9 +337,15 @@ public class Searcher {
         int i2 = 0;
         if (l1>0 && l2>0){
             while (i1 < l1 && i2 < l2) {
-                PostingsEntry pp1 = p1.get(i1);
-                PostingsEntry pp2 = p2.get(i2);
-                if (pp1.docID == pp2.docID) {
+                int d1 = p1.docID(i1);
+                int d2 = p2.docID(i2);
+                if (d1 < d2) {
+                    i1 = p1.advance(i1, d2);
+                } else if (d1 > d2) {
+                    i2 = p2.advance(i2, d1);
+                } else {
+                    PostingsEntry pp1 = p1.get(i1);
+                    PostingsEntry pp2 = p2.get(i2);
                     ArrayList<Integer> offsetList1 = pp1.offsetList;
                     ArrayList<Integer> offsetList2 = pp2.offsetList;
                     ArrayList<Integer> result = find_matchingoffset(offsetList1,offsetList2);
@@ -235,11 +364,6 @@ public class Searcher {
                         //Add the PostingEntry in p3
                     i1 = i1 + 1;
                     i2 = i2 + 1;
-
-                } else if (pp1.docID < pp2.docID) {
-                    i1 = i1 + 1;
-                } else {
-                    i2 = i2 + 1;
                 }
             }
         }
@@ -274,7 +398,7 @@ public class Searcher {
     }
 
     public PostingsList search_engine_intersection(ArrayList<String> stringquery){
-        PostingsList plist = new PostingsList();
+        ArrayList<PostingsList> lists = new ArrayList<PostingsList>();
         for (int i = 0; i < stringquery.size(); i++) {
             ArrayList<String> words = kgIndex.resolve_string_wildcard(stringquery.get(i));
             PostingsList posting_union = index.getPostings(words.get(0));
@@ -288,90 +412,115 @@ public class Searcher {
                 }
                 posting_union = union(p1,posting_union);
             }
-            if(plist.size()==0){
-                plist = posting_union;
-            }else {
-                plist = interesection(plist, posting_union);
-            }
+            lists.add(posting_union);
+        }
+        if (lists.isEmpty()) {
+            return new PostingsList();
+        }
+        // Start with the rarest term, so that the intermediate results
+        // stay small and the longer lists are galloped over.
+        lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        PostingsList plist = lists.get(0);
+        for (int i = 1; i < lists.size() && plist.size() > 0; i++) {
+            plist = interesection(plist, lists.get(i));
         }
-
         return plist;
     }
 
     public PostingsList search_engine_phrase_query(ArrayList<String> stringquery){
-        PostingsList plist = null;
-        for (int i = 0; i < stringquery.size(); i++) {
-            ArrayList<String> words = kgIndex.resolve_string_wildcard(stringquery.get(i));
-            PostingsList posting_union = index.getPostings(words.get(0));
-            for(int l=1; l<words.size(); l++) {
-                PostingsList p1 = index.getPostings(words.get(l));
-                posting_union = merge(p1,posting_union);
+        return search_engine_phrase_query(stringquery, Integer.MAX_VALUE);
+    }
 
+    /**
+     *  Returns the first <code>maxDocs</code> documents that contain the
+     *  phrase, see PhraseEvaluator. The phrase may be quoted, with a slop:
+     *  "a b"~3. A wildcard term matches any of its words.
+     */
+    public PostingsList search_engine_phrase_query(ArrayList<String> stringquery, int maxDocs){
+        ArrayList<String> phrase = new ArrayList<String>(stringquery);
+        int slop = PhraseEvaluator.parseSlop(phrase);
+        ArrayList<PostingsList[]> terms = new ArrayList<PostingsList[]>();
+        for (String term : phrase) {
+            ArrayList<PostingsList> lists = new ArrayList<PostingsList>();
+            for (String word : kgIndex.resolve_string_wildcard(term)) {
+                PostingsList list = index.getPostings(word);
+                if (list != null) {
+                    lists.add(list);
+                }
             }
-            if(plist==null){
-                plist = posting_union;
-            }else {
-                System.out.println("Arguments");
-                System.out.println(plist.size());
-                System.out.println(posting_union.size());
-                plist = interesection_phrasequery(plist, posting_union);
-                System.out.println("Solution");
-                System.out.println(plist.size());
+            if (lists.isEmpty()) {
+                return null;
             }
+            terms.add(lists.toArray(new PostingsList[0]));
         }
-        return plist;
+        if (terms.isEmpty()) {
+            return null;
+        }
+        return new PhraseEvaluator(terms, slop).evaluate(maxDocs, false);
     }
 
     public PostingsList search_engine_ranked_query(Query query,ArrayList<String> stringquery,RankingType rankingType, NormalizationType normtype){
         if(rankingType == RankingType.HITS) {
-            HITSRanker hr = new HITSRanker("pagerank/linksDavis.txt",
-                    "pagerank/davisTitles.txt",this.index);
+            LinkGraph graph = linkGraph();
+            if (graph == null) {
+                return new PostingsList();
+            }
+            HITSRanker hr = hitsRankers.get();
             PostingsList p1 = hr.rank(stringquery);
             p1.sort_posting();
             return p1;
         }
         else {
-            PostingsList p1 = new PostingsList();
-            PostingsList result = new PostingsList();
-            for (int i = 0; i < stringquery.size(); i++) {
-                ArrayList<String> words = kgIndex.resolve_string_wildcard(query.queryterm.get(i).term);
-                for(int q=0 ; q<words.size(); q++){
-                    PostingsList p2 = index.getPostings(words.get(q));
-                    //if(p2==null){
-                        //continue;
-                   // }
-                    double weight2 = query.queryterm.get(i).weight;
-                    double idft2 = p2.calculate_idf(this.index);
-                    for (int j = 0; j < p2.size(); j++) {
-                        PostingsEntry entry = p2.get(j);
-                        double eucl_length_doc = 0;
-                        if (euclidian_length.containsKey(entry.docID)) {
-                            eucl_length_doc = euclidian_length.get(entry.docID);
-                        }
-                        if (rankingType == RankingType.TF_IDF) {
-                            entry.calculate_score(idft2, index, normtype, eucl_length_doc,weight2);
-                        }
-                        if (rankingType == RankingType.PAGERANK) {
-                            entry.score = this.ranking_hash.get(entry.docID);
-                        }
-                        if (rankingType == RankingType.COMBINATION) {
-                            entry.calculate_score(idft2, index, normtype, eucl_length_doc,weight2);
-                            double sum = entry.score + this.ranking_hash.get(entry.docID);
-                            entry.score = 0.7 * entry.score/sum + 0.3 * this.ranking_hash.get(entry.docID)/sum;
-                        }
-                    }
-                    if(result.size()==0){
-                        result = p2;
-                    }else {
-                        result = union(p2, result);
+            return search_engine_ranked_taat(query, rankingType, normtype, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     *  Returns the link graph for HITS ranking, reading it the first
+     *  time, or null if it cannot be read. A failed read is not retried.
+     */
+    LinkGraph linkGraph() {
+        LinkGraph graph = linkGraph;
+        if (graph == null && linkGraphError == null) {
+            synchronized (this) {
+                graph = linkGraph;
+                if (graph == null && linkGraphError == null) {
+                    try {
+                        long start = System.nanoTime();
+                        graph = LinkGraph.read(LINKS_FILE, TITLES_FILE, index.getDocuments());
+                        System.err.println(String.format("Read the link graph in %.1f ms: %d pages, %d links",
+                                                         (System.nanoTime() - start) / 1e6, graph.size(), graph.links()));
+                        linkGraph = graph;
+                    } catch (IOException e) {
+                        linkGraphError = e;
+                        System.err.println("Cannot read the link graph, HITS queries will have no results: " + e.getMessage());
                     }
                 }
-
             }
-            result.sort_posting();
+        }
+        return graph;
+    }
 
-            return result;
+    /**
+     *  Returns the <code>topK</code> best documents for a ranked query
+     *  (all of them for Integer.MAX_VALUE), scored term at a time by an
+     *  AccumulatorScorer.
+     */
+    PostingsList search_engine_ranked_taat(Query query, RankingType rankingType, NormalizationType normtype, int topK) {
+        AccumulatorScorer accumulator = accumulators.get();
+        int n = index.getDocuments().size();
+        for (int i = 0; i < query.queryterm.size(); i++) {
+            double weight = query.queryterm.get(i).weight;
+            ArrayList<String> words = kgIndex.resolve_string_wildcard(query.queryterm.get(i).term);
+            for (String word : words) {
+                PostingsList list = index.getPostings(word);
+                if (list == null) {
+                    continue;
+                }
+                accumulator.add(list, index.getTermStats(word).idf(n), weight, rankingType, normtype);
+            }
         }
+        return accumulator.topK(topK);
     }
 
 
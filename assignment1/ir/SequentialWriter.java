@@ -0,0 +1,100 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ *  Writes a file from start to end through a large direct buffer.
+ *
+ *  The buffer is only handed to the file channel when it is full, so
+ *  building an index costs one system call per BUFFER_SIZE bytes
+ *  instead of a seek and a write per term. Numbers are big-endian, as
+ *  written by RandomAccessFile.
+ */
+public class SequentialWriter implements Closeable {
+
+    /** Size of the buffer (1 MB). */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+
+    /** Number of bytes written so far, including the buffered ones. */
+    private long position = 0;
+
+
+    /** Creates the file <code>fileName</code>, or truncates it if it exists. */
+    public SequentialWriter( String fileName ) throws IOException {
+        channel = FileChannel.open( Paths.get( fileName ), StandardOpenOption.CREATE,
+                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+    }
+
+
+    /** Returns the number of bytes written so far, i.e. where the next byte goes. */
+    public long position() {
+        return position;
+    }
+
+
+    public void write( byte[] data ) throws IOException {
+        write( data, 0, data.length );
+    }
+
+
+    public void write( byte[] data, int off, int len ) throws IOException {
+        position += len;
+        while ( len > 0 ) {
+            if ( !buffer.hasRemaining() ) {
+                flush();
+            }
+            int n = Math.min( len, buffer.remaining() );
+            buffer.put( data, off, n );
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    public void writeInt( int v ) throws IOException {
+        if ( buffer.remaining() < 4 ) {
+            flush();
+        }
+        buffer.putInt( v );
+        position += 4;
+    }
+
+
+    public void writeLong( long v ) throws IOException {
+        if ( buffer.remaining() < 8 ) {
+            flush();
+        }
+        buffer.putLong( v );
+        position += 8;
+    }
+
+
+    /** Writes the buffered bytes to the file. */
+    void flush() throws IOException {
+        buffer.flip();
+        while ( buffer.hasRemaining() ) {
+            channel.write( buffer );
+        }
+        buffer.clear();
+    }
+
+
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
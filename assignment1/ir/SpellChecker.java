@@ -79,7 +79,7 @@ public class SpellChecker {
      *      => delete (cost 1)
      *      => substitute (cost 2)
      */
-    private int editDistance(String s1, String s2) {
+    int editDistance(String s1, String s2) {
         s1 = "#" + s1;
         s2 = "#" + s2;
         int[] scores = IntStream.range(0, s1.length()).toArray();
@@ -117,14 +117,14 @@ public class SpellChecker {
         for(int i=0; i<list_query.size(); i++){
             String word_query = list_query.get(i).term;
             Double score = list_query.get(i).weight;
-            PostingsList plist = this.index.getPostings(word_query);
-            if(plist == null){
+            TermStats stats = this.index.getTermStats(word_query);
+            if(stats == null){
                 //misspelled word
                 String [] sugg = get_suggestions_token(word_query);
                 List<KGramStat> list_more = order_list(sugg);
                 list_of_lists.add(list_more.stream().limit(limit).collect(Collectors.toList()));
             }else{
-                KGramStat stat = new KGramStat(word_query,index.getPostings(word_query).size());
+                KGramStat stat = new KGramStat(word_query,stats.df);
                 List<KGramStat> list_one = new ArrayList<>();
                 list_one.add(stat);
                 Collections.sort(list_one,Collections.reverseOrder());
@@ -142,7 +142,7 @@ public class SpellChecker {
     private List<KGramStat> order_list(String [] suggestions){
         List<KGramStat> list_kgr = new ArrayList<>();
         for(int i=0; i<suggestions.length; i++){
-            KGramStat kgr = new KGramStat(suggestions[i],index.getPostings(suggestions[i]).size());
+            KGramStat kgr = new KGramStat(suggestions[i],index.getTermStats(suggestions[i]).df);
             list_kgr.add(kgr);
         }
         Collections.sort(list_kgr, Collections.reverseOrder());
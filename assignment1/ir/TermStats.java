@@ -0,0 +1,71 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+import java.util.function.IntUnaryOperator;
+
+
+/**
+ *  Statistics of a term that a persistent index keeps in its
+ *  dictionary, so they can be looked up without reading the postings.
+ */
+public class TermStats {
+
+    /** Number of documents containing the term. */
+    public final int df;
+
+    /** Number of occurrences of the term in the collection. */
+    public final long cf;
+
+    /** Largest number of occurrences of the term in one document. */
+    public final int maxTf;
+
+    /**
+     *  Largest number of occurrences of the term in one document divided
+     *  by the length of that document. Bounds the tf-idf score of the
+     *  term in any document, when scores are normalized by the number of
+     *  words.
+     */
+    public final double maxTfNorm;
+
+
+    public TermStats( int df, long cf, int maxTf, double maxTfNorm ) {
+        this.df = df;
+        this.cf = cf;
+        this.maxTf = maxTf;
+        this.maxTfNorm = maxTfNorm;
+    }
+
+
+    /**
+     *  Computes the statistics of a postings list. <code>length</code>
+     *  gives the length of a document from its docID.
+     */
+    public static TermStats of( PostingsList list, IntUnaryOperator length ) {
+        long cf = 0;
+        int maxTf = 0;
+        double maxTfNorm = 0;
+        for ( int i=0; i<list.size(); i++ ) {
+            int tf = list.tf( i );
+            cf += tf;
+            maxTf = Math.max( maxTf, tf );
+            maxTfNorm = Math.max( maxTfNorm, (double)tf / length.applyAsInt( list.docID( i )));
+        }
+        return new TermStats( list.size(), cf, maxTf, maxTfNorm );
+    }
+
+
+    /** Computes the statistics of a postings list, with the document lengths of <code>documents</code>. */
+    public static TermStats of( PostingsList list, DocumentTable documents ) {
+        return of( list, documents::length );
+    }
+
+
+    /** Returns the idf of the term in a collection of <code>n</code> documents. */
+    public double idf( int n ) {
+        return Math.log( (double)n / df );
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */
+
+package ir;
+
+
+/**
+ *  Keeps the k best documents seen so far, in a binary min-heap stored
+ *  in two parallel arrays. The root is the worst of the k documents, so
+ *  a new document only has to beat the root to get in.
+ *
+ *  Documents are ordered by decreasing score, and documents with equal
+ *  scores by increasing docID, which is the order PostingsList.sort_posting
+ *  leaves a list sorted by docID in.
+ */
+public class TopKHeap {
+
+    /** The docIDs and scores of the heap. */
+    private final int[] docIDs;
+    private final double[] scores;
+
+    /** Number of documents in the heap. */
+    private int size = 0;
+
+
+    public TopKHeap( int k ) {
+        docIDs = new int[k];
+        scores = new double[k];
+    }
+
+
+    /** Returns the number of documents the heap keeps. */
+    public int capacity() {
+        return docIDs.length;
+    }
+
+
+    /** Removes all documents. */
+    public void clear() {
+        size = 0;
+    }
+
+
+    /**
+     *  Returns the score a new document must exceed to get in, or
+     *  negative infinity as long as the heap is not full.
+     */
+    public double threshold() {
+        return size < docIDs.length ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+
+
+    /**
+     *  Adds a document if it is among the k best. Returns true if it was added.
+     */
+    public boolean offer( int docID, double score ) {
+        if ( size < docIDs.length ) {
+            docIDs[size] = docID;
+            scores[size] = score;
+            up( size++ );
+            return true;
+        }
+        if ( size == 0 || !worse( docIDs[0], scores[0], docID, score )) {
+            return false;
+        }
+        docIDs[0] = docID;
+        scores[0] = score;
+        down( 0 );
+        return true;
+    }
+
+
+    /**
+     *  Empties the heap into a postings list of the documents, best first.
+     *  The postings have scores but no positions.
+     */
+    public PostingsList toPostingsList() {
+        int n = size;
+        int[] d = new int[n];
+        double[] s = new double[n];
+        // Taking the root out repeatedly gives the documents worst first.
+        for ( int i=n-1; i>=0; i-- ) {
+            d[i] = docIDs[0];
+            s[i] = scores[0];
+            size--;
+            docIDs[0] = docIDs[size];
+            scores[0] = scores[size];
+            down( 0 );
+        }
+        PostingsList list = new PostingsList();
+        int[] none = new int[0];
+        for ( int i=0; i<n; i++ ) {
+            list.append( d[i], s[i], none, 0, 0 );
+        }
+        return list;
+    }
+
+
+    /** Returns true if document a is worse than document b. */
+    private static boolean worse( int docA, double scoreA, int docB, double scoreB ) {
+        int c = Double.compare( scoreA, scoreB );
+        return c < 0 || c == 0 && docA > docB;
+    }
+
+
+    private void up( int i ) {
+        while ( i > 0 ) {
+            int parent = (i - 1) >>> 1;
+            if ( !worse( docIDs[i], scores[i], docIDs[parent], scores[parent] )) {
+                break;
+            }
+            swap( i, parent );
+            i = parent;
+        }
+    }
+
+
+    private void down( int i ) {
+        while ( true ) {
+            int child = 2*i + 1;
+            if ( child >= size ) {
+                break;
+            }
+            if ( child + 1 < size && worse( docIDs[child+1], scores[child+1], docIDs[child], scores[child] )) {
+                child++;
+            }
+            if ( !worse( docIDs[child], scores[child], docIDs[i], scores[i] )) {
+                break;
+            }
+            swap( i, child );
+            i = child;
+        }
+    }
+
+
+    private void swap( int i, int j ) {
+        int d = docIDs[i];
+        docIDs[i] = docIDs[j];
+        docIDs[j] = d;
+        double s = scores[i];
+        scores[i] = scores[j];
+        scores[j] = s;
+    }
+}
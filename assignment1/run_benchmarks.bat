@@ -0,0 +1,17 @@
+REM Builds the engine and the JMH benchmarks with Maven and runs them.
+REM The results are written as JSON to benchmarks\results.json. With
+REM --baseline as the first argument they are written to
+REM benchmarks\baseline.json instead, to compare later runs against.
+set RESULTS=benchmarks\results.json
+if "%~1"=="--baseline" (
+    set RESULTS=benchmarks\baseline.json
+    shift
+)
+set ARGS=
+:args
+if "%~1"=="" goto run
+set ARGS=%ARGS% %1
+shift
+goto args
+:run
+call mvn -B -q package -DskipTests && java -jar benchmarks\target\benchmarks.jar -rf json -rff %RESULTS% %ARGS%
@@ -0,0 +1,12 @@
+#!/bin/sh
+# Builds the engine and the JMH benchmarks with Maven and runs them.
+# The results are written as JSON to benchmarks/results-<time>.json.
+# With --baseline as the first argument they are written to
+# benchmarks/baseline.json instead, to compare later runs against.
+# Extra arguments go to JMH, e.g. ./run_benchmarks.sh MergeBenchmark -p corpus=../davisWiki
+RESULTS=benchmarks/results-$(date +%Y%m%d-%H%M%S).json
+if [ "$1" = "--baseline" ]; then
+    RESULTS=benchmarks/baseline.json
+    shift
+fi
+mvn -B -q package -DskipTests && java -jar benchmarks/target/benchmarks.jar -rf json -rff "$RESULTS" "$@"
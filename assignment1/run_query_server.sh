@@ -0,0 +1,2 @@
+#!/bin/sh
+java -cp classes -Xmx1g ir.Engine -d /Users/annasanchezespunyes/Documents/KTH/Search_Engines/davisWiki -p patterns.txt -ni -headless -port 8080